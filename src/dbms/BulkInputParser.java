@@ -0,0 +1,194 @@
+package dbms;
+
+import dbms.util.ByteUtils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+// 일괄 적재 입력 파일(첫 줄 파일명, 둘째 줄 레코드 수, 이후 한 줄에 레코드 하나)을 여러 스레드로 나눠 파싱한다
+// 읽는 스레드가 파일을 줄 경계에서 조각으로 나눠(가능하면 메모리 매핑) 작업 스레드에 넘기고, 작업 스레드는
+// 조각의 줄을 레코드 바이트로 바꾼다. 호출한 스레드 하나만 조각을 입력 순서대로 받아 BulkLoader 에 넣는다
+// 조각은 크기가 정해진 큐로 넘기므로 쓰기가 밀리면 읽기도 멈추고, 메모리에는 (작업 스레드 수 + 1) 개의 조각만 있다
+final class BulkInputParser {
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int HEADER_LINES = 2;
+    private static final int SCAN_BUFFER_SIZE = 8192;
+
+    // 읽기가 끝났다는 표시
+    private static final Future<Chunk> END = CompletableFuture.completedFuture(null);
+
+    private final Path path;
+    private final Schema schema;
+    private final int threads;
+
+    // 조각 하나를 파싱한 결과. 건너뛴 줄은 출력할 메시지로 모아 둔다
+    private static final class Chunk {
+        private final List<BulkLoader.Entry> entries = new ArrayList<>();
+        private final List<String> skipped = new ArrayList<>();
+    }
+
+    BulkInputParser(String dataFilePath, Schema schema, int threads) {
+        this.path = Paths.get(dataFilePath);
+        this.schema = schema;
+        this.threads = Math.max(1, threads);
+    }
+
+    // 파싱한 레코드를 입력 순서대로 loader 에 넣고, 형식이 틀려 건너뛴 줄 수를 돌려준다
+    int parseInto(BulkLoader loader) throws IOException {
+        ExecutorService workers = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "bulk-load-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        BlockingQueue<Future<Chunk>> chunks = new ArrayBlockingQueue<>(threads + 1);
+        Thread reader = new Thread(() -> readChunks(loader, workers, chunks), "bulk-load-reader");
+        reader.setDaemon(true);
+
+        int skipped = 0;
+        try {
+            reader.start();
+            Chunk chunk;
+            while ((chunk = take(chunks)) != null) {
+                for (BulkLoader.Entry entry : chunk.entries) {
+                    loader.add(entry);
+                }
+                for (String message : chunk.skipped) {
+                    System.err.println(message);
+                }
+                skipped += chunk.skipped.size();
+            }
+        } finally {
+            // 쓰기가 실패했으면 읽기와 파싱을 멈춘다
+            reader.interrupt();
+            workers.shutdownNow();
+        }
+        return skipped;
+    }
+
+    private static Chunk take(BlockingQueue<Future<Chunk>> chunks) throws IOException {
+        try {
+            return chunks.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("일괄 적재가 중단되었습니다.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    // 읽는 스레드. 머리 두 줄을 건너뛰고 CHUNK_SIZE 근처의 줄 끝에서 잘라 조각마다 파싱 작업을 맡긴다
+    private void readChunks(BulkLoader loader, ExecutorService workers, BlockingQueue<Future<Chunk>> chunks) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = skipLines(channel, 0, HEADER_LINES);
+            while (position < size) {
+                long end = position + CHUNK_SIZE >= size ? size : skipLines(channel, position + CHUNK_SIZE - 1, 1);
+                ByteBuffer bytes = map(channel, position, end - position);
+                chunks.put(workers.submit(() -> parse(bytes, loader)));
+                position = end;
+            }
+            chunks.put(END);
+        } catch (InterruptedException | RejectedExecutionException e) {
+            // 쓰는 쪽이 먼저 끝났다
+        } catch (Throwable e) {
+            // 큐가 차 있어도 버리지 않도록 기다렸다가 넣는다. 쓰는 쪽이 먼저 끝났으면 interrupt 로 빠져나온다
+            CompletableFuture<Chunk> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            try {
+                chunks.put(failed);
+            } catch (InterruptedException interrupted) {
+                // 쓰는 쪽이 먼저 끝났다
+            }
+        }
+    }
+
+    // from 부터 줄바꿈을 count 개 지난 위치. 그 전에 파일이 끝나면 파일 크기
+    private static long skipLines(FileChannel channel, long from, int count) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long position = from;
+        while (count > 0) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read && count > 0; i++) {
+                position++;
+                if (buffer.get(i) == '\n') {
+                    count--;
+                }
+            }
+        }
+        return position;
+    }
+
+    // 매핑할 수 없는 파일이면 힙 버퍼로 읽는다
+    private static ByteBuffer map(FileChannel channel, long position, long length) throws IOException {
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        } catch (IOException | UnsupportedOperationException e) {
+            // 조각은 줄 끝에서 자르므로 아주 긴 줄 하나가 힙 버퍼 한계를 넘을 수 있다
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("한 줄이 너무 길어 읽을 수 없습니다: " + position + " 위치부터 " + length + " 바이트");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) length);
+            while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) >= 0) {
+                // 다 읽을 때까지
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    // 작업 스레드. 조각은 줄 경계에서 잘렸으므로 UTF-8 문자가 조각 사이에 걸치지 않는다
+    private Chunk parse(ByteBuffer bytes, BulkLoader loader) {
+        String text = ByteUtils.CHARSET.decode(bytes).toString();
+        Chunk chunk = new Chunk();
+
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            if (end < 0) {
+                end = text.length();
+            }
+            String line = text.substring(start, end > start && text.charAt(end - 1) == '\r' ? end - 1 : end);
+            start = end + 1;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+
+            // 필드 타입에 맞지 않는 값이 있는 줄은 건너뛴다
+            try {
+                chunk.entries.add(loader.encode(new Record(RecordManager.parseValues(line, schema), schema)));
+            } catch (IllegalArgumentException e) {
+                chunk.skipped.add("잘못된 레코드를 건너뜁니다: " + line + " (" + e.getMessage() + ")");
+            }
+        }
+        return chunk;
+    }
+}
@@ -0,0 +1,296 @@
+package dbms;
+
+import dbms.index.BPlusTreeIndex;
+import dbms.index.FenceIndex;
+import dbms.storage.FreeSpaceMap;
+import dbms.storage.Page;
+import dbms.storage.SlottedPage;
+import dbms.util.ByteUtils;
+import dbms.util.Constants;
+import dbms.util.RecordPointer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// 레코드를 검색 키 순으로 정렬해 데이터 파일에 한 번에 순차적으로 쓴다
+// 메모리 한도를 넘으면 정렬된 런을 임시 파일로 내보내고 마지막에 k-way 병합한다
+public class BulkLoader implements AutoCloseable {
+    // 레코드 하나를 메모리에 들고 있을 때 직렬화 크기 외에 드는 대략적인 비용 (바이트)
+    private static final int ENTRY_OVERHEAD = 64;
+
+    // 저장된 키 바이트의 부호 없는 순서 (체인·인덱스와 같은 순서). 키가 같으면 입력 순서를 유지한다 (정렬 삽입과 같은 결과)
+    private static final Comparator<byte[]> KEY_ORDER = Comparator.nullsFirst(Arrays::compareUnsigned);
+
+    private final DiskFileManager diskFileManager;
+    private final String fileName;
+    private final long memoryBudget;
+    private final int maxRecordSize;
+
+    private final List<Entry> buffer = new ArrayList<>();
+    private final List<File> runs = new ArrayList<>();
+    private long bufferedBytes;
+
+    // 레코드 바이트(Record.toBytes 형식)와 그 검색 키
+    static final class Entry {
+        private final byte[] key;     // 필드 길이로 자른 검색 키. null 키면 null
+        private final byte[] bytes;
+
+        Entry(byte[] key, byte[] bytes) {
+            this.key = key;
+            this.bytes = bytes;
+        }
+    }
+
+    // 정렬된 런 파일을 앞에서부터 하나씩 읽는다
+    private static final class RunReader implements AutoCloseable {
+        private final int runIndex;
+        private final DataInputStream in;
+        private Entry current;
+
+        private RunReader(int runIndex, File file) throws IOException {
+            this.runIndex = runIndex;
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        }
+
+        private boolean advance() throws IOException {
+            byte[] key = null;
+            try {
+                if (in.readBoolean()) {
+                    key = new byte[in.readUnsignedShort()];
+                    in.readFully(key);
+                }
+            } catch (EOFException e) {
+                current = null;
+                return false;
+            }
+            byte[] bytes = new byte[in.readUnsignedShort()];
+            in.readFully(bytes);
+            current = new Entry(key, bytes);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    public BulkLoader(DiskFileManager diskFileManager, String fileName, long memoryBudget) throws IOException {
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("일괄 적재 메모리 한도는 0보다 커야 합니다: " + memoryBudget);
+        }
+        this.diskFileManager = diskFileManager;
+        this.fileName = fileName;
+        this.memoryBudget = memoryBudget;
+        this.maxRecordSize = SlottedPage.getMaxRecordSize(diskFileManager.getPageSize(fileName));
+    }
+
+    public void add(Record record) throws IOException {
+        add(encode(record));
+    }
+
+    // 레코드를 적재할 바이트와 키로 바꾼다. 여러 스레드에서 함께 불러도 된다
+    // 값 형식이 틀리거나 페이지에 들어가지 않으면 IllegalArgumentException
+    Entry encode(Record record) {
+        // 다음 포인터는 쓰는 시점에 채우므로 비워 둔 채 직렬화한다
+        record.setNextPointer(null);
+        byte[] bytes = record.toBytes();
+        if (bytes.length > maxRecordSize) {
+            throw new IllegalArgumentException("레코드가 페이지 크기보다 큽니다: " + bytes.length + "바이트");
+        }
+        return new Entry(record.getSearchKeyBytes(), bytes);
+    }
+
+    // encode 로 만든 레코드를 넣는다. 한 스레드에서만 불러야 한다
+    void add(Entry entry) throws IOException {
+        buffer.add(entry);
+        bufferedBytes += entry.bytes.length + ENTRY_OVERHEAD + (entry.key != null ? entry.key.length : 0);
+
+        if (bufferedBytes >= memoryBudget) {
+            spillRun();
+        }
+    }
+
+    // 모은 레코드를 키 순으로 파일에 쓰고 적재한 레코드 수를 돌려준다
+    public int finish() throws IOException {
+        if (runs.isEmpty()) {
+            buffer.sort((a, b) -> KEY_ORDER.compare(a.key, b.key));
+            Iterator<Entry> it = buffer.iterator();
+            int count = writeSorted(() -> it.hasNext() ? it.next() : null);
+            buffer.clear();
+            bufferedBytes = 0;
+            return count;
+        }
+
+        if (!buffer.isEmpty()) {
+            spillRun();
+        }
+        return mergeRuns();
+    }
+
+    // 이미 키 순서인 레코드(체인 스캔 결과)를 정렬하지 않고 그대로 쓴다. 다음 포인터는 쓰면서 다시 채운다
+    public int writeOrdered(Iterator<Entry> entries) throws IOException {
+        return writeSorted(() -> entries.hasNext() ? entries.next() : null);
+    }
+
+    @Override
+    public void close() {
+        for (File run : runs) {
+            if (!run.delete()) {
+                run.deleteOnExit();
+            }
+        }
+        runs.clear();
+    }
+
+    private void spillRun() throws IOException {
+        buffer.sort((a, b) -> KEY_ORDER.compare(a.key, b.key));
+
+        File run = File.createTempFile("bulk", ".run", new File(Constants.DATA_DIRECTORY));
+        runs.add(run);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run)))) {
+            for (Entry entry : buffer) {
+                out.writeBoolean(entry.key != null);
+                if (entry.key != null) {
+                    out.writeShort(entry.key.length);
+                    out.write(entry.key);
+                }
+                out.writeShort(entry.bytes.length);
+                out.write(entry.bytes);
+            }
+        }
+
+        buffer.clear();
+        bufferedBytes = 0;
+    }
+
+    private int mergeRuns() throws IOException {
+        PriorityQueue<RunReader> heap = new PriorityQueue<>((a, b) -> {
+            int c = KEY_ORDER.compare(a.current.key, b.current.key);
+            return c != 0 ? c : Integer.compare(a.runIndex, b.runIndex);
+        });
+        List<RunReader> readers = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                RunReader reader = new RunReader(i, runs.get(i));
+                readers.add(reader);
+                if (reader.advance()) {
+                    heap.add(reader);
+                }
+            }
+
+            return writeSorted(() -> {
+                RunReader reader = heap.poll();
+                if (reader == null) {
+                    return null;
+                }
+                Entry entry = reader.current;
+                if (reader.advance()) {
+                    heap.add(reader);
+                }
+                return entry;
+            });
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    // 정렬된 순서로 레코드를 내준다. 다 내주면 null
+    private interface EntrySource {
+        Entry next() throws IOException;
+    }
+
+    // 정렬된 레코드를 블록 1부터 채워 나간다. 각 레코드의 다음 포인터는 다음 레코드를 놓은 뒤에 채운다
+    // 이전 레코드의 페이지와 현재 페이지만 pin 해 두므로 버퍼 프레임은 최대 두 개를 쓴다
+    private int writeSorted(EntrySource source) throws IOException {
+        int blockNumber = 1;
+        Page current = null;
+        Page previous = null;
+        int previousSlot = -1;
+        RecordPointer first = null;
+        int count = 0;
+
+        // 레코드가 키 순으로 놓이므로 인덱스도 같은 순서로 아래에서부터 쌓는다
+        BPlusTreeIndex index = diskFileManager.getIndex(fileName);
+        BPlusTreeIndex.Builder indexBuilder = index != null ? index.bulkBuilder() : null;
+        FreeSpaceMap freeSpaceMap = diskFileManager.getFreeSpaceMap(fileName);
+        FenceIndex fenceIndex = new FenceIndex();
+
+        try {
+            Entry entry;
+            while ((entry = source.next()) != null) {
+                if (current == null) {
+                    current = diskFileManager.pinBlock(fileName, blockNumber);
+                }
+
+                int slot = SlottedPage.insert(current.getBuffer(), entry.bytes);
+                if (slot < 0) {
+                    // 가득 찬 페이지의 마지막 레코드가 곧 이전 레코드이므로 그대로 pin 해 둔다
+                    freeSpaceMap.update(blockNumber, SlottedPage.getFreeSpace(current.getBuffer()));
+                    blockNumber++;
+                    current = diskFileManager.pinBlock(fileName, blockNumber);
+                    slot = SlottedPage.insert(current.getBuffer(), entry.bytes);
+                }
+
+                RecordPointer pointer = new RecordPointer(blockNumber, slot);
+                if (slot == 0) {
+                    fenceIndex.add(blockNumber, entry.key);
+                }
+                if (indexBuilder != null) {
+                    indexBuilder.add(entry.key, pointer);
+                }
+                if (previous == null) {
+                    first = pointer;
+                } else {
+                    linkNext(previous.getBuffer(), previousSlot, pointer);
+                    if (previous != current) {
+                        diskFileManager.unpinBlock(previous, true);
+                    }
+                }
+
+                previous = current;
+                previousSlot = slot;
+                count++;
+            }
+        } finally {
+            if (previous != null && previous != current) {
+                diskFileManager.unpinBlock(previous, true);
+            }
+            if (current != null) {
+                freeSpaceMap.update(blockNumber, SlottedPage.getFreeSpace(current.getBuffer()));
+                diskFileManager.unpinBlock(current, previous != null);
+            }
+        }
+
+        if (indexBuilder != null) {
+            indexBuilder.finish();
+        }
+        diskFileManager.updateFirstRecordPointer(fileName, first);
+        diskFileManager.updateAppendBlockNumber(fileName, blockNumber);
+        diskFileManager.saveFenceIndex(fileName, fenceIndex);
+        return count;
+    }
+
+    private void linkNext(ByteBuffer page, int slot, RecordPointer next) {
+        int end = SlottedPage.getRecordOffset(page, slot) + SlottedPage.getRecordLength(page, slot);
+        ByteUtils.writePointer(page, end - Constants.POINTER_SIZE, next);
+    }
+}
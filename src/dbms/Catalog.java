@@ -0,0 +1,35 @@
+package dbms;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+// 파일(테이블)별 필드 구성을 저장하는 시스템 카탈로그
+// MySQL 메타데이터를 쓰는 MetadataManager 와 데이터 디렉터리의 파일에 저장하는 EmbeddedCatalog 가 있다
+public interface Catalog {
+
+    void createTable(String fileName, Schema schema) throws IOException, SQLException;
+
+    // 테이블이 없으면 null
+    Schema getSchema(String fileName) throws SQLException;
+
+    boolean fileExists(String fileName) throws SQLException;
+
+    void close();
+
+    default List<String> getFieldNames(String fileName) throws SQLException {
+        Schema schema = getSchema(fileName);
+        return schema != null ? schema.getFieldNames() : new ArrayList<>();
+    }
+
+    default List<Integer> getFieldLengths(String fileName) throws SQLException {
+        Schema schema = getSchema(fileName);
+        return schema != null ? schema.getFieldLengths() : new ArrayList<>();
+    }
+
+    default int getFieldIndex(String fileName, String fieldName) throws SQLException {
+        Schema schema = getSchema(fileName);
+        return schema != null ? schema.getFieldIndex(fieldName) : -1;
+    }
+}
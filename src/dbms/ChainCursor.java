@@ -0,0 +1,186 @@
+package dbms;
+
+import dbms.util.RecordPointer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// 레코드 체인을 따라가며 결과를 하나씩 돌려주는 커서. 결과를 모아 두지 않으므로 메모리 사용량이 일정하다
+// 행은 RecordView 하나를 재사용해 페이지 위에서 바로 검사하고, 내보낼 행만 mapper 로 변환한다
+// 읽기 오류는 UncheckedIOException 으로 전달된다
+// 파일 락 없이 블록 래치만 잡고 읽으므로 읽는 사이의 삽입, 삭제, 수정이 보일 수도, 보이지 않을 수도 있다
+// 읽는 사이에 지워진 레코드는 내보내지 않고 남아 있는 다음 포인터로 체인을 이어 간다
+// 스냅숏을 넘겨받은 커서는 닫힐 때 스냅숏도 닫아, 그 사이 교체된 세대와 지운 레코드를 회수할 수 있게 한다
+public class ChainCursor<T> implements Iterator<T>, AutoCloseable {
+    private static final int END = -1;
+
+    // 페이지가 pin 되어 있는 동안 행을 결과 값으로 바꾼다
+    public interface RowMapper<T> {
+        T map(RecordView row);
+    }
+
+    private final DiskFileManager diskFileManager;
+    private final String fileName;
+    private final byte[] minKey;    // null 이면 하한 없음
+    private final byte[] maxKey;    // null 이면 상한 없음
+    private final RowMapper<T> mapper;
+    private final RecordView view;
+    private final DiskFileManager.SlotReader<Boolean> rowReader = this::readRow; // 행마다 람다를 만들지 않도록 한 번만 만든다
+    private final DiskFileManager.SlotReader<Boolean> deletedRowReader = this::skipRow;
+    private int blockCount;
+
+    private int currentBlock;
+    private int currentSlot;
+    private boolean passedMaxKey;
+    private long offset;
+    private long remaining = Long.MAX_VALUE;
+
+    private T nextItem;
+    private boolean hasNextItem;
+    private boolean closed;
+    private DiskFileManager.Snapshot heldSnapshot;  // 닫을 때 닫을 스냅숏
+
+    ChainCursor(DiskFileManager diskFileManager, String fileName, Schema schema, RecordPointer start,
+                byte[] minKey, byte[] maxKey, RowMapper<T> mapper) throws IOException {
+        this.diskFileManager = diskFileManager;
+        this.fileName = fileName;
+        this.minKey = minKey;
+        this.maxKey = maxKey;
+        this.mapper = mapper;
+        this.view = new RecordView(schema);
+        this.blockCount = diskFileManager.getFileSize(fileName);
+        this.currentBlock = start != null ? start.getBlockNumber() : END;
+        this.currentSlot = start != null ? start.getSlotNumber() : 0;
+    }
+
+    // 앞의 n개 결과를 건너뛴다. 첫 next() 전에 호출해야 한다
+    public ChainCursor<T> offset(long n) {
+        this.offset = Math.max(0, n);
+        return this;
+    }
+
+    // 커서를 닫을 때 snapshot 을 닫는다. 끝까지 읽으면 저절로 닫힌다
+    ChainCursor<T> releaseOnClose(DiskFileManager.Snapshot snapshot) {
+        this.heldSnapshot = snapshot;
+        return this;
+    }
+
+    // 최대 n개까지만 돌려준다
+    public ChainCursor<T> limit(long n) {
+        this.remaining = Math.max(0, n);
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (hasNextItem) {
+            return true;
+        }
+        if (closed || remaining == 0) {
+            return false;
+        }
+
+        try {
+            // 깨진 체인이 파일 밖을 가리키면 멈춘다. 커서를 연 뒤 다른 스레드가 늘린 블록이면 크기를 다시 읽는다
+            while (currentBlock >= 0 && (currentBlock < blockCount || currentBlock < refreshBlockCount())) {
+                int block = currentBlock;
+                int slot = currentSlot;
+
+                Boolean emitted = diskFileManager.readSlot(fileName, block, slot, rowReader, deletedRowReader);
+                if (emitted == null || passedMaxKey) {
+                    break;
+                }
+
+                // 자기 자신을 가리키는 체인은 끝으로 본다
+                if (currentBlock == block && currentSlot == slot) {
+                    currentBlock = END;
+                }
+
+                if (emitted) {
+                    hasNextItem = true;
+                    remaining--;
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException(e);
+        }
+
+        close();
+        return false;
+    }
+
+    private int refreshBlockCount() throws IOException {
+        blockCount = diskFileManager.getFileSize(fileName);
+        return blockCount;
+    }
+
+    // 다음 위치와 (범위 조건이 있으면) 검색 키만 먼저 보고, 내보낼 행만 변환한다
+    private Boolean readRow(ByteBuffer page, int recordOffset, int length) {
+        view.reset(page, recordOffset, length);
+        currentBlock = view.nextBlock();
+        currentSlot = view.nextSlot();
+
+        if (maxKey != null && view.compareKey(maxKey) > 0) {
+            passedMaxKey = true;
+            return false;
+        }
+        if (minKey != null && view.compareKey(minKey) < 0) {
+            return false;
+        }
+        if (offset > 0) {
+            offset--;
+            return false;
+        }
+
+        nextItem = mapper.map(view);
+        return true;
+    }
+
+    // 읽는 사이에 지워진 레코드. 내보내지 않고 다음 위치만 읽는다. 다음 레코드의 키는 이 레코드의 키 이상이다
+    private Boolean skipRow(ByteBuffer page, int recordOffset, int length) {
+        view.reset(page, recordOffset, length);
+        currentBlock = view.nextBlock();
+        currentSlot = view.nextSlot();
+        if (maxKey != null && view.compareKey(maxKey) > 0) {
+            passedMaxKey = true;
+        }
+        return false;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T item = nextItem;
+        nextItem = null;
+        hasNextItem = false;
+        return item;
+    }
+
+    // 스트림을 닫으면 커서도 닫힌다
+    public Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false)
+                .onClose(this::close);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        currentBlock = END;
+        if (heldSnapshot != null) {
+            DiskFileManager.Snapshot snapshot = heldSnapshot;
+            heldSnapshot = null;
+            snapshot.close();
+        }
+    }
+}
@@ -1,255 +1,1156 @@
 package dbms;
 
+import dbms.index.BPlusTreeIndex;
+import dbms.index.FenceIndex;
+import dbms.index.HashIndex;
+import dbms.storage.BlockStorage;
+import dbms.storage.BufferPool;
+import dbms.storage.FileHandleManager;
+import dbms.storage.FileHeader;
+import dbms.storage.FreeSpaceMap;
+import dbms.storage.MappedFileManager;
+import dbms.storage.Page;
+import dbms.storage.SlottedPage;
+import dbms.storage.StorageMode;
+import dbms.storage.WriteAheadLog;
 import dbms.util.ByteUtils;
 import dbms.util.Constants;
 import dbms.util.RecordPointer;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+// 여러 스레드가 함께 쓸 수 있다. 캐시 조회는 락 없이 하고, 캐시를 채우거나 파일을 만들고 바꾸는 일은 객체 락을 잡고 한다
+// 데이터 블록의 내용은 블록 래치를 잡은 채 읽고 고친다. 래치를 잡은 채 다른 블록의 래치를 잡지 않는다
+// CHANNEL 모드에서는 트랜잭션 안에서 고친 페이지를 선행 기록 로그에 남기고, 시작할 때 로그에 남은 커밋을 다시 쓴다
+// 로그에 남지 않는 작업(파일 생성, 인덱스 생성)은 끝에 체크포인트로 내용을 디스크에 내린다
+// 일괄 적재와 재구성은 파일의 다음 세대를 옆에 새로 쓰고 디스크에 내린 뒤 .gen 파일을 바꿔 넣어 한 번에 교체한다
+// 검색은 시작할 때의 세대를 스냅숏으로 잡고 읽으며, 교체된 세대는 잡은 스냅숏이 모두 닫히면 지운다
+// 검색은 파일 락 없이 블록 래치만 잡고 체인을 따라가므로, 지운 레코드는 바이트를 남겨 두었다가(markDeleted)
+// 지우기 전에 연 스냅숏이 모두 닫힌 뒤에 회수한다(reclaimDeleted). 그래야 검색이 쥔 포인터의 슬롯이 다른 레코드로 바뀌지 않는다
 public class DiskFileManager {
-    private MetadataManager metadataManager;
-    private Map<String, Integer> nextAvailablePositions = new HashMap<>();
+    // 논리 파일 이름의 현재 세대 번호를 담는 파일의 접미사. 없으면 0세대
+    public static final String GENERATION_SUFFIX = ".gen";
+    // 1세대부터는 "이름@번호" 를 데이터 파일 이름으로 쓰고, 인덱스 등 딸린 파일은 그 이름 뒤에 접미사를 붙인다
+    private static final char GENERATION_SEPARATOR = '@';
+    private static final String TEMP_SUFFIX = ".tmp";
+    // 블록마다 래치를 두지 않고 (파일, 블록) 의 해시로 이만큼의 래치를 나눠 쓴다
+    private static final int BLOCK_LATCH_STRIPES = 64;
+    // 버퍼 풀이 트랜잭션이 붙잡은 페이지로 찼을 때 프레임이 풀리기를 기다리는 최대 시간
+    private static final long TRANSACTION_WAIT_NANOS = 1_000_000_000L;
 
-    private Map<String, Map<Integer, byte[]>> blockCache = new HashMap<>();
-    private static final int CACHE_SIZE = 3;
+    private Catalog catalog;
+    private StorageMode storageMode;
+    private BlockStorage storage;
+    private BufferPool bufferPool;              // CHANNEL 모드에서만 사용
+    private MappedFileManager mappedFiles;      // MMAP 모드에서만 사용
+    private WriteAheadLog log;                  // CHANNEL 모드에서 로그를 켰을 때만 사용
+    private Map<String, Integer> appendBlockNumbers = new ConcurrentHashMap<>();
+    private Map<String, Integer> pageSizes = new ConcurrentHashMap<>();
+    private Map<String, BPlusTreeIndex> indexes = new ConcurrentHashMap<>();
+    private Map<String, FreeSpaceMap> freeSpaceMaps = new ConcurrentHashMap<>();
+    private Map<String, HashIndex[]> hashIndexes = new ConcurrentHashMap<>(); // 필드 번호별 보조 인덱스 (없는 필드는 null)
+    private Map<String, Optional<FenceIndex>> fenceIndexes = new ConcurrentHashMap<>(); // 비어 있으면 펜스 인덱스가 없다고 확인한 파일
+    private final Map<String, Generation> generations = new ConcurrentHashMap<>(); // 논리 파일 이름별 현재 세대
+    private final Set<Generation> retiredGenerations = ConcurrentHashMap.newKeySet(); // 교체되었지만 아직 지우지 못한 세대
+    private final AtomicLong deleteSequence = new AtomicLong(); // 레코드를 지울 때마다 늘어나는 번호
+    private final TreeMap<Long, Integer> openScans = new TreeMap<>(); // 열린 스냅숏 수를 열 때의 삭제 번호별로. 이 객체의 락을 잡고 쓴다
+    private final Map<String, Map<Integer, Long>> deletedBlocks = new ConcurrentHashMap<>(); // 파일별로 회수할 레코드가 있는 블록과 마지막 삭제 번호
+    private final ReadWriteLock[] blockLatches = new ReadWriteLock[BLOCK_LATCH_STRIPES];
+    private final ThreadLocal<Transaction> transactions = new ThreadLocal<>();
+    // 트랜잭션은 읽기 락을, 체크포인트는 쓰기 락을 잡아 커밋하지 않은 페이지를 디스크에 쓰지 않는다
+    private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+    private final Set<String> changedFiles = ConcurrentHashMap.newKeySet(); // 마지막 체크포인트 뒤로 페이지를 고친 파일
+    private final AtomicInteger heldPages = new AtomicInteger(); // 모든 트랜잭션이 붙잡은 페이지 수
+    private int bufferPoolSize;
 
-    public DiskFileManager(MetadataManager metadataManager) {
-        this.metadataManager = metadataManager;
+    // 한 스레드가 진행 중인 트랜잭션. 고친 페이지는 커밋할 때까지 pin 된 채 남는다
+    private static final class Transaction {
+        private final List<Page> pages = new ArrayList<>();
+        private long commitLsn;
+    }
+
+    // 파일의 한 세대. readers, retired, schema 는 이 객체의 락을 잡고 바꾼다
+    private static final class Generation {
+        private final String logicalName;
+        private final int number;
+        private final String fileName;  // 이 세대의 데이터 파일 이름
+        private int readers;            // 이 세대를 잡고 있는 스냅숏 수
+        private boolean retired;        // 다음 세대로 교체되었다
+        private Schema schema;          // 이 세대의 레코드 형식. null 이면 처음 쓸 때 카탈로그에서 읽는다
+
+        private Generation(String logicalName, int number, Schema schema) {
+            this.logicalName = logicalName;
+            this.number = number;
+            this.fileName = generationFileName(logicalName, number);
+            this.schema = schema;
+        }
+    }
+
+    // 검색이 시작할 때 잡는 파일의 한 세대. 닫을 때까지 일괄 적재나 재구성이 세대를 바꿔도 이 세대를 그대로 읽는다
+    public final class Snapshot implements AutoCloseable {
+        private final Generation generation;
+        private final long deleteStamp; // 열 때의 삭제 번호. 이보다 뒤에 지운 레코드는 닫을 때까지 회수하지 않는다
+        private boolean closed;
+
+        private Snapshot(Generation generation, long deleteStamp) {
+            this.generation = generation;
+            this.deleteStamp = deleteStamp;
+        }
+
+        // 이 세대의 데이터 파일 이름. 이 객체의 다른 메서드에 그대로 넘긴다
+        public String getFileName() {
+            return generation.fileName;
+        }
+
+        // 이 세대를 만들 때의 스키마. 그 뒤 파일을 다시 만들어 카탈로그가 바뀌어도 그대로이다. 파일이 없으면 null
+        public Schema getSchema() throws SQLException {
+            return schemaOf(generation);
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            synchronized (openScans) {
+                openScans.computeIfPresent(deleteStamp, (stamp, count) -> count > 1 ? count - 1 : null);
+            }
+            release(generation);
+        }
+    }
+
+    public DiskFileManager(Catalog catalog) throws IOException {
+        this(catalog, StorageMode.CHANNEL, Constants.BUFFER_POOL_SIZE);
+    }
+
+    public DiskFileManager(Catalog catalog, int bufferPoolSize) throws IOException {
+        this(catalog, StorageMode.CHANNEL, bufferPoolSize);
+    }
+
+    public DiskFileManager(Catalog catalog, StorageMode storageMode, int bufferPoolSize) throws IOException {
+        this(catalog, storageMode, bufferPoolSize, true);
+    }
+
+    // writeAheadLog 가 false 면 로그 없이 페이지를 버퍼 풀에서 내릴 때만 쓴다 (MMAP 모드는 항상 로그 없음)
+    public DiskFileManager(Catalog catalog, StorageMode storageMode, int bufferPoolSize, boolean writeAheadLog)
+            throws IOException {
+        this.catalog = catalog;
+        this.storageMode = storageMode;
+        for (int i = 0; i < blockLatches.length; i++) {
+            blockLatches[i] = new ReentrantReadWriteLock();
+        }
 
         // 데이터 디렉터리 생성
         File directory = new File(Constants.DATA_DIRECTORY);
         if (!directory.exists()) {
             directory.mkdirs();
         }
-    }
 
-    public void createSequentialFile(String fileName, List<String> fieldNames,
-                                     List<String> fieldTypes, List<Integer> fieldLengths) throws IOException, SQLException {
-        String filePath = Constants.DATA_DIRECTORY + fileName;
+        if (storageMode == StorageMode.MMAP) {
+            // 매핑 모드에서는 OS 페이지 캐시가 버퍼 풀 역할을 한다
+            this.mappedFiles = new MappedFileManager(Constants.DATA_DIRECTORY);
+            this.storage = mappedFiles;
+        } else {
+            this.storage = new FileHandleManager(Constants.DATA_DIRECTORY);
+        }
 
-        try (RandomAccessFile file = new RandomAccessFile(filePath, "rw")) {
-            file.setLength(0);
-            byte[] headerBlockData = new byte[Constants.BLOCK_SIZE];
+        // 지난번에 체크포인트 없이 끝났으면 로그에 남은 커밋을 데이터 파일에 다시 쓴다
+        // 다시 쓴 파일의 여유 공간 맵과 펜스 인덱스는 페이지와 맞지 않을 수 있으므로 버린다
+        for (String fileName : WriteAheadLog.recover(Constants.DATA_DIRECTORY, storage)) {
+            storage.delete(fileName + FreeSpaceMap.FILE_SUFFIX);
+            storage.delete(fileName + FenceIndex.FILE_SUFFIX);
+        }
 
-            for (int i = 0; i < Constants.POINTER_SIZE; i++) {
-                headerBlockData[i] = (byte) 0xFF;
+        if (storageMode != StorageMode.MMAP) {
+            // 매핑된 페이지는 OS 가 언제든 디스크에 쓸 수 있어 로그보다 늦게 쓰인다고 보장할 수 없으므로 CHANNEL 모드에서만 쓴다
+            if (writeAheadLog) {
+                this.log = new WriteAheadLog(Constants.DATA_DIRECTORY);
             }
+            this.bufferPool = new BufferPool(storage, bufferPoolSize, log);
+            this.bufferPoolSize = bufferPoolSize;
+        }
+    }
+
+    public StorageMode getStorageMode() {
+        return storageMode;
+    }
+
+    public void createSequentialFile(String fileName, Schema schema) throws IOException, SQLException {
+        createSequentialFile(fileName, schema, Constants.DEFAULT_PAGE_SIZE);
+    }
+
+    // 이미 있는 파일이면 다음 세대로 만들어 바꿔 넣으므로, 이전 내용을 읽고 있던 검색은 끝까지 이전 내용을 읽는다
+    // 카탈로그는 바꾸지 않는다. 다른 작업과 겹칠 수 있으면 RecordManager.createTable 을 쓴다
+    public void createSequentialFile(String fileName, Schema schema, int pageSize) throws IOException, SQLException {
+        switchGeneration(fileName, createNextGeneration(fileName, schema, pageSize), schema);
+    }
+
+    // 빈 데이터 파일과 검색 키 인덱스를 다음 세대로 만들어 디스크에 내리고 그 데이터 파일 이름을 돌려준다
+    // 아직 파일이 없으면 현재 세대 이름에 만든다. 바꿔 넣기(switchGeneration) 전에 실패하면 돌려받은 이름으로 deleteFile 한다
+    public synchronized String createNextGeneration(String fileName, Schema schema, int pageSize)
+            throws IOException, SQLException {
+        Generation current = getGeneration(fileName);
+        // 이후 카탈로그가 바뀌어도 현재 세대의 검색이 이전 스키마로 읽도록 지금 스키마를 붙잡아 둔다
+        schemaOf(current);
+        String target = exists(current.fileName) ? nextGenerationFileName(fileName) : current.fileName;
+        createDataFile(target, pageSize);
 
-            file.write(headerBlockData);
+        // 검색 키(첫 번째 필드)에 대한 B+ 트리 인덱스를 함께 만든다. 키는 레코드에 저장된 바이트 그대로 넣는다
+        createIndex(target, schema.getSearchKeyLength());
+        // 헤더 블록과 빈 인덱스는 로그에 남지 않으므로 바로 디스크에 내린다
+        syncFile(target);
+        syncFile(target + BPlusTreeIndex.FILE_SUFFIX);
+
+        // 같은 이름으로 전에 만든 파일의 보조 인덱스는 버린다
+        hashIndexes.remove(target);
+        for (String fieldName : schema.getFieldNames()) {
+            discardFile(HashIndex.getFileName(target, fieldName));
+        }
+
+        System.out.println("순차 파일 생성 완료: " + fileName + " (페이지 크기 " + pageSize + "바이트)");
+        return target;
+    }
+
+    // 레코드가 없는 데이터 파일을 만든다. 새 레코드는 블록 1부터 채우고 여유 공간 맵도 비운다
+    public synchronized void createDataFile(String fileName, int pageSize) throws IOException {
+        createFile(fileName, pageSize);
+        appendBlockNumbers.remove(fileName);
+        updateAppendBlockNumber(fileName, 1);
+
+        freeSpaceMaps.put(fileName, new FreeSpaceMap(pageSize));
+        storage.delete(fileName + FreeSpaceMap.FILE_SUFFIX);
+        invalidateFenceIndex(fileName);
+    }
+
+    public synchronized BPlusTreeIndex createIndex(String fileName, int keyLength) throws IOException {
+        BPlusTreeIndex index = BPlusTreeIndex.create(this, fileName, keyLength);
+        indexes.put(fileName, index);
+        return index;
+    }
+
+    // 필드 값에 대한 빈 해시 인덱스를 만든다. 내용은 호출한 쪽에서 채운다
+    public synchronized HashIndex createHashIndex(String fileName, Schema schema, int fieldIndex) throws IOException {
+        HashIndex index = HashIndex.create(this, fileName, schema.getFieldName(fieldIndex), schema.getKeyLength(fieldIndex));
+        getHashIndexes(fileName, schema)[fieldIndex] = index;
+        return index;
+    }
+
+    // 필드 번호별 보조 인덱스. 인덱스가 없는 필드는 null 이며, 파일마다 한 번만 인덱스 파일을 찾는다
+    public HashIndex[] getHashIndexes(String fileName, Schema schema) throws IOException {
+        HashIndex[] fieldIndexes = hashIndexes.get(fileName);
+        if (fieldIndexes != null && fieldIndexes.length == schema.getFieldCount()) {
+            return fieldIndexes;
         }
 
-        nextAvailablePositions.put(fileName, Constants.BLOCK_SIZE);
-        blockCache.put(fileName, new LinkedHashMap<Integer, byte[]>(CACHE_SIZE, 0.75f, true) {
-            @Override
-            protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
-                return size() > CACHE_SIZE;
+        synchronized (this) {
+            fieldIndexes = hashIndexes.get(fileName);
+            if (fieldIndexes == null || fieldIndexes.length != schema.getFieldCount()) {
+                fieldIndexes = new HashIndex[schema.getFieldCount()];
+                for (int i = 1; i < fieldIndexes.length; i++) {
+                    fieldIndexes[i] = HashIndex.open(this, fileName, schema.getFieldName(i));
+                }
+                hashIndexes.put(fileName, fieldIndexes);
             }
-        });
+            return fieldIndexes;
+        }
+    }
 
-        System.out.println("순차 파일 생성 완료: " + fileName);
+    // 파일과 인덱스(보조 인덱스 포함)를 지운다
+    public synchronized void deleteFile(String fileName) throws IOException {
+        deletedBlocks.remove(fileName);
+        indexes.remove(fileName);
+        hashIndexes.remove(fileName);
+        appendBlockNumbers.remove(fileName);
+        freeSpaceMaps.remove(fileName);
+        discardFile(fileName);
+        discardFile(fileName + BPlusTreeIndex.FILE_SUFFIX);
+        storage.delete(fileName + FreeSpaceMap.FILE_SUFFIX);
+        invalidateFenceIndex(fileName);
+        fenceIndexes.remove(fileName);
+        for (String name : listDataFiles(fileName)) {
+            discardFile(name);
+        }
     }
 
-    public byte[] readBlockData(String fileName, int blockNumber) throws IOException {
-        Map<Integer, byte[]> fileCache = blockCache.get(fileName);
-        if (fileCache != null && fileCache.containsKey(blockNumber)) {
-            return Arrays.copyOf(fileCache.get(blockNumber), Constants.BLOCK_SIZE);
+    // 논리 파일 이름의 현재 세대를 잡는다. 사용 후 닫아야 한다
+    public Snapshot openSnapshot(String fileName) throws IOException {
+        while (true) {
+            Generation generation = getGeneration(fileName);
+            synchronized (generation) {
+                // 교체된 세대면 이미 새 세대가 현재 세대이므로 다시 가져온다
+                if (!generation.retired) {
+                    generation.readers++;
+                    // 체인의 포인터를 하나라도 읽기 전에 등록해, 그 뒤에 지운 레코드가 회수되지 않게 한다
+                    synchronized (openScans) {
+                        long stamp = deleteSequence.get();
+                        openScans.merge(stamp, 1, Integer::sum);
+                        return new Snapshot(generation, stamp);
+                    }
+                }
+            }
         }
+    }
 
-        String filePath = Constants.DATA_DIRECTORY + fileName;
-        long position = (long) blockNumber * Constants.BLOCK_SIZE;
+    // 논리 파일 이름의 현재 세대 데이터 파일 이름. 세대를 바꾸는 작업과 겹치지 않도록 락을 잡은 쪽에서 쓴다
+    public String getCurrentFileName(String fileName) throws IOException {
+        return getGeneration(fileName).fileName;
+    }
 
-        try (RandomAccessFile file = new RandomAccessFile(filePath, "r")) {
+    // 다음 세대의 데이터 파일 이름. 같은 이름으로 만들다 만 파일이 있으면 지운다
+    public synchronized String nextGenerationFileName(String fileName) throws IOException {
+        String target = generationFileName(fileName, getGeneration(fileName).number + 1);
+        deleteFile(target);
+        return target;
+    }
 
-            file.seek(position);
+    // 다음 세대(target)를 다 쓴 뒤 부른다. 새 세대를 디스크에 내리고 .gen 파일을 바꿔 넣어 이후의 스냅숏은 새 세대를 읽게 한다
+    // 이전 세대는 잡고 있는 스냅숏이 없으면 바로, 있으면 마지막 스냅숏이 닫힐 때 지운다
+    public void switchGeneration(String fileName, String target) throws IOException {
+        switchGeneration(fileName, target, null);
+    }
 
-            byte[] blockData = new byte[Constants.BLOCK_SIZE];
-            file.readFully(blockData);
+    // schema 가 null 이면 이전 세대의 스키마를 이어 쓴다. .gen 파일을 바꾼 뒤에는 예외를 던지지 않는다
+    public void switchGeneration(String fileName, String target, Schema schema) throws IOException {
+        Generation previous;
+        synchronized (this) {
+            previous = getGeneration(fileName);
+            if (target.equals(previous.fileName)) {
+                // 처음 만든 파일은 이미 현재 세대이다
+                synchronized (previous) {
+                    previous.schema = schema != null ? schema : previous.schema;
+                }
+                return;
+            }
 
-            if (fileCache == null) {
-                fileCache = new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
-                    @Override
-                    protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
-                        return size() > CACHE_SIZE;
-                    }
-                };
-                blockCache.put(fileName, fileCache);
+            flush(target);
+            for (String name : listDataFiles(target)) {
+                flush(name);
+                storage.force(name);
             }
-            fileCache.put(blockNumber, blockData);
 
-            return blockData;
+            Generation next;
+            synchronized (previous) {
+                next = new Generation(fileName, generationOf(fileName, target), schema != null ? schema : previous.schema);
+            }
+            writeGenerationNumber(fileName, next.number);
+            generations.put(fileName, next);
         }
+        retire(previous);
     }
 
-    public void writeBlockData(String fileName, int blockNumber, byte[] blockData) throws IOException {
+    private Generation getGeneration(String fileName) throws IOException {
+        Generation generation = generations.get(fileName);
+        if (generation != null) {
+            return generation;
+        }
 
-        String filePath = Constants.DATA_DIRECTORY + fileName;
-        long position = (long) blockNumber * Constants.BLOCK_SIZE;
+        synchronized (this) {
+            generation = generations.get(fileName);
+            if (generation == null) {
+                generation = new Generation(fileName, readGenerationNumber(fileName), null);
+                removeStaleGenerations(fileName, generation.number);
+                generations.put(fileName, generation);
+            }
+            return generation;
+        }
+    }
+
+    // 논리 파일의 현재 세대 스키마. 세대를 바꾸는 작업과 겹치지 않도록 락을 잡은 쪽에서 쓴다. 파일이 없으면 null
+    public Schema getSchema(String fileName) throws IOException, SQLException {
+        return schemaOf(getGeneration(fileName));
+    }
 
-        try (RandomAccessFile file = new RandomAccessFile(filePath, "rw")) {
-            if (file.length() < position + Constants.BLOCK_SIZE) {
-                file.setLength(position + Constants.BLOCK_SIZE);
+    private Schema schemaOf(Generation generation) throws SQLException {
+        synchronized (generation) {
+            if (generation.schema == null) {
+                generation.schema = catalog.getSchema(generation.logicalName);
             }
+            return generation.schema;
+        }
+    }
 
-            file.seek(position);
+    private void retire(Generation generation) {
+        synchronized (generation) {
+            generation.retired = true;
+        }
+        retiredGenerations.add(generation);
+        deleteRetiredGenerations();
+    }
 
-            file.write(blockData);
+    private void release(Generation generation) {
+        boolean unused;
+        synchronized (generation) {
+            generation.readers--;
+            unused = generation.retired && generation.readers == 0;
+        }
+        if (unused) {
+            deleteRetiredGenerations();
+        }
+    }
 
-            Map<Integer, byte[]> fileCache = blockCache.get(fileName);
-            if (fileCache == null) {
-                fileCache = new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
-                    @Override
-                    protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
-                        return size() > CACHE_SIZE;
-                    }
-                };
-                blockCache.put(fileName, fileCache);
+    // 교체된 세대 가운데 잡고 있는 스냅숏도, pin 된 페이지도 없는 세대의 파일을 지운다
+    // 아직 쓰이는 세대는 남겨 두고 다음 세대 교체나 스냅숏을 닫을 때, 또는 close 에서 다시 시도한다
+    private void deleteRetiredGenerations() {
+        for (Generation generation : retiredGenerations) {
+            synchronized (generation) {
+                if (generation.readers > 0) {
+                    continue;
+                }
+            }
+            synchronized (this) {
+                if (!retiredGenerations.contains(generation) || isPinned(generation.fileName)) {
+                    continue;
+                }
+                try {
+                    deleteFile(generation.fileName);
+                    retiredGenerations.remove(generation);
+                } catch (IOException | IllegalStateException e) {
+                    System.err.println("이전 세대 파일 삭제 중 오류 발생: " + e.getMessage());
+                }
             }
-            fileCache.put(blockNumber, Arrays.copyOf(blockData, Constants.BLOCK_SIZE));
         }
     }
 
+    // 데이터 파일이나 딸린 파일의 페이지를 누가 pin 하고 있는지
+    private boolean isPinned(String dataFileName) {
+        if (bufferPool == null) {
+            return false;
+        }
+        for (String name : listDataFiles(dataFileName)) {
+            if (bufferPool.isPinned(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-    // 첫 레코드 포인터 값
-    public int getFirstRecordPointer(String fileName) throws IOException {
-        byte[] headerBlock = readBlockData(fileName, 0);
+    private int readGenerationNumber(String fileName) throws IOException {
+        String pointerName = fileName + GENERATION_SUFFIX;
+        if (storage.size(pointerName) < Integer.BYTES) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+        storage.read(pointerName, 0, buffer);
+        return buffer.getInt(0);
+    }
 
-        boolean isNegativeOne = true;
-        for (int i = 0; i < Constants.POINTER_SIZE; i++) {
-            if (headerBlock[i] != (byte) 0xFF) {
-                isNegativeOne = false;
-                break;
+    // 임시 파일에 쓰고 이름을 바꿔 넣으므로 중간에 멈춰도 이전 번호나 새 번호 중 하나만 남는다
+    private void writeGenerationNumber(String fileName, int number) throws IOException {
+        String pointerName = fileName + GENERATION_SUFFIX;
+        String tempName = pointerName + TEMP_SUFFIX;
+        storage.truncate(tempName, 0);
+        storage.write(tempName, 0, ByteBuffer.allocate(Integer.BYTES).putInt(0, number));
+        storage.force(tempName);
+        storage.rename(tempName, pointerName);
+    }
+
+    // 지난번에 끝나지 못한 세대 교체가 남긴 파일(만들다 만 다음 세대, 지우지 못한 이전 세대)을 지운다
+    private void removeStaleGenerations(String fileName, int current) throws IOException {
+        storage.delete(fileName + GENERATION_SUFFIX + TEMP_SUFFIX);
+        String[] names = new File(Constants.DATA_DIRECTORY).list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            int number = generationOf(fileName, name);
+            if (number >= 0 && number != current) {
+                discardFile(name);
             }
         }
+    }
 
-        if (isNegativeOne) {
+    private static String generationFileName(String fileName, int number) {
+        return number == 0 ? fileName : fileName + GENERATION_SEPARATOR + number;
+    }
+
+    // name 이 논리 파일 fileName 의 어느 세대에 딸린 파일이면 그 세대 번호, 아니면 -1
+    private static int generationOf(String fileName, String name) {
+        if (!name.startsWith(fileName)) {
             return -1;
         }
+        String rest = name.substring(fileName.length());
+        int number = 0;
+        if (!rest.isEmpty() && rest.charAt(0) == GENERATION_SEPARATOR) {
+            int end = 1;
+            while (end < rest.length() && end < 10 && Character.isDigit(rest.charAt(end))) {
+                end++;
+            }
+            if (end == 1) {
+                return -1;
+            }
+            number = Integer.parseInt(rest.substring(1, end));
+            rest = rest.substring(end);
+        }
+        return isDataFileSuffix(rest) ? number : -1;
+    }
 
-        int blockNumber = ((headerBlock[0] & 0xFF) << 24) |
-                ((headerBlock[1] & 0xFF) << 16) |
-                ((headerBlock[2] & 0xFF) << 8) |
-                (headerBlock[3] & 0xFF);
+    // 데이터 파일 자신(빈 접미사)과 인덱스, 여유 공간 맵, 펜스 인덱스, 필드별 보조 인덱스(".필드.hidx")의 접미사인지
+    private static boolean isDataFileSuffix(String suffix) {
+        if (suffix.isEmpty() || suffix.equals(BPlusTreeIndex.FILE_SUFFIX) || suffix.equals(FreeSpaceMap.FILE_SUFFIX)
+                || suffix.equals(FenceIndex.FILE_SUFFIX)) {
+            return true;
+        }
+        int fieldEnd = suffix.length() - HashIndex.FILE_SUFFIX.length();
+        return suffix.endsWith(HashIndex.FILE_SUFFIX) && fieldEnd > 1 && suffix.lastIndexOf('.', fieldEnd - 1) == 0;
+    }
 
-        int offsetInBlock = ((headerBlock[4] & 0xFF) << 8) |
-                (headerBlock[5] & 0xFF);
+    // 데이터 디렉터리에 있는, 데이터 파일 dataFileName 에 딸린 파일(데이터 파일 자신 포함) 이름들
+    private static List<String> listDataFiles(String dataFileName) {
+        List<String> files = new ArrayList<>();
+        String[] names = new File(Constants.DATA_DIRECTORY).list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(dataFileName) && isDataFileSuffix(name.substring(dataFileName.length()))) {
+                    files.add(name);
+                }
+            }
+        }
+        return files;
+    }
 
-        //System.out.println("블록 번호 : " + blockNumber + "오프셋: "+ offsetInBlock);
+    // 데이터 파일의 펜스 인덱스. 키 순서로 빽빽하게 쓴 뒤 바뀌지 않았을 때만 있고, 아니면 null
+    public FenceIndex getFenceIndex(String fileName) throws IOException {
+        Optional<FenceIndex> cached = fenceIndexes.get(fileName);
+        if (cached != null) {
+            return cached.orElse(null);
+        }
 
-        return blockNumber * Constants.BLOCK_SIZE + offsetInBlock;
+        synchronized (this) {
+            cached = fenceIndexes.get(fileName);
+            if (cached == null) {
+                cached = Optional.ofNullable(FenceIndex.load(storage, fileName));
+                fenceIndexes.put(fileName, cached);
+            }
+            return cached.orElse(null);
         }
+    }
 
-    public int pointerToOffset(RecordPointer pointer) {
-        if (pointer == null) {
-            return -1;
+    public synchronized void saveFenceIndex(String fileName, FenceIndex fenceIndex) throws IOException {
+        fenceIndex.save(storage, fileName);
+        fenceIndexes.put(fileName, Optional.of(fenceIndex));
+    }
+
+    // 레코드를 넣거나 지우기 전에 부른다. 이미 없으면 락을 잡거나 파일을 다시 확인하지 않는다
+    public void invalidateFenceIndex(String fileName) throws IOException {
+        Optional<FenceIndex> cached = fenceIndexes.get(fileName);
+        if (cached != null && cached.isEmpty()) {
+            return;
+        }
+
+        synchronized (this) {
+            storage.delete(fileName + FenceIndex.FILE_SUFFIX);
+            fenceIndexes.put(fileName, Optional.empty());
         }
-        return pointer.toFileOffset(Constants.BLOCK_SIZE);
     }
 
-    public RecordPointer offsetToPointer(int offset) {
-        if (offset < 0) {
-            return null;
+    // 데이터 파일의 여유 공간 맵. 맵 파일이 없거나 맞지 않으면 모든 데이터 블록을 읽어 다시 만든다
+    public FreeSpaceMap getFreeSpaceMap(String fileName) throws IOException {
+        FreeSpaceMap freeSpaceMap = freeSpaceMaps.get(fileName);
+        if (freeSpaceMap != null) {
+            return freeSpaceMap;
         }
 
-        int blockNumber = offset / Constants.BLOCK_SIZE;
-        int offsetInBlock = offset % Constants.BLOCK_SIZE;
+        synchronized (this) {
+            freeSpaceMap = freeSpaceMaps.get(fileName);
+            if (freeSpaceMap != null) {
+                return freeSpaceMap;
+            }
+
+            int pageSize = getPageSize(fileName);
+            freeSpaceMap = FreeSpaceMap.load(storage, fileName, pageSize);
+            if (freeSpaceMap == null || freeSpaceMap.getBlockCount() <= getAppendBlockNumber(fileName)) {
+                freeSpaceMap = new FreeSpaceMap(pageSize);
+                int blockCount = getFileSize(fileName);
+                for (int block = 1; block < blockCount; block++) {
+                    Lock latch = getBlockLatch(fileName, block).readLock();
+                    latch.lock();
+                    try {
+                        Page page = pinBlock(fileName, block);
+                        try {
+                            freeSpaceMap.update(block, SlottedPage.getFreeSpace(page.getBuffer()));
+                        } finally {
+                            unpinBlock(page, false);
+                        }
+                    } finally {
+                        latch.unlock();
+                    }
+                }
+            }
 
-        return new RecordPointer(blockNumber, offsetInBlock);
+            freeSpaceMaps.put(fileName, freeSpaceMap);
+            return freeSpaceMap;
+        }
     }
 
-    public Record readRecord(String fileName, RecordPointer pointer) throws IOException, SQLException {
-        if (pointer == null) {
-            return null;
+    private void discardFile(String fileName) throws IOException {
+        resetLog(fileName);
+        if (bufferPool != null) {
+            bufferPool.discard(fileName);
         }
+        pageSizes.remove(fileName);
+        changedFiles.remove(fileName);
+        storage.delete(fileName);
+    }
 
-        int blockNumber = pointer.getBlockNumber();
-        int offsetInBlock = pointer.getOffsetInBlock();
+    // 헤더 블록만 있는 빈 파일을 만든다. 같은 이름의 파일이 있으면 내용을 버린다
+    public void createFile(String fileName, int pageSize) throws IOException {
+        FileHeader.validatePageSize(pageSize);
 
-        List<String> fieldNames = metadataManager.getFieldNames(fileName);
-        List<Integer> fieldLengths = metadataManager.getFieldLengths(fileName);
+        resetLog(fileName);
+        if (bufferPool != null) {
+            bufferPool.discard(fileName);
+        }
+        storage.truncate(fileName, 0);
+        pageSizes.put(fileName, pageSize);
 
+        Page headerPage = pinBlock(fileName, 0);
         try {
-            byte[] blockData = readBlockData(fileName, blockNumber);
+            FileHeader.init(headerPage.getBuffer(), pageSize);
+        } finally {
+            unpinBlock(headerPage, true);
+        }
+    }
+
+    // 로그 밖에서 파일 내용을 버리기 전에 부른다. 복구할 때 이전 내용의 페이지 기록을 새 파일에 덮어쓰지 않는다
+    private void resetLog(String fileName) throws IOException {
+        if (log != null) {
+            log.reset(fileName);
+        }
+    }
+
+    // 로그에 남지 않은 파일 내용을 바로 디스크에 내린다
+    private void syncFile(String fileName) throws IOException {
+        if (log != null) {
+            flush(fileName);
+            storage.force(fileName);
+        }
+    }
 
-            byte nullBitmap = blockData[offsetInBlock];
+    public boolean exists(String fileName) throws IOException {
+        return storage.size(fileName) > 0;
+    }
+
+    // 데이터 파일의 검색 키 인덱스. 인덱스 파일이 없으면(이전 버전에서 만든 파일) null
+    public BPlusTreeIndex getIndex(String fileName) throws IOException {
+        BPlusTreeIndex index = indexes.get(fileName);
+        if (index != null) {
+            return index;
+        }
 
-            int recordSize = 1;
-            for (int i = 0; i < fieldNames.size(); i++) {
-                boolean isNull = ByteUtils.isFieldNull(nullBitmap, i);
-                if (!isNull) {
-                    recordSize += fieldLengths.get(i);
+        // 같은 인덱스 파일을 두 객체가 따로 고치지 않도록 여는 일은 한 스레드씩 한다
+        synchronized (this) {
+            index = indexes.get(fileName);
+            if (index == null) {
+                index = BPlusTreeIndex.open(this, fileName);
+                if (index != null) {
+                    indexes.put(fileName, index);
                 }
             }
-            recordSize += Constants.POINTER_SIZE;
-
-            byte[] recordData = new byte[recordSize];
+            return index;
+        }
+    }
 
-            int availableInBlock = Constants.BLOCK_SIZE - offsetInBlock;
+    // 헤더 블록에 기록된 페이지 크기. 파일마다 한 번만 디스크에서 읽는다
+    public int getPageSize(String fileName) throws IOException {
+        Integer cached = pageSizes.get(fileName);
+        if (cached != null) {
+            return cached;
+        }
 
-            if (availableInBlock >= recordSize) {
-                System.arraycopy(blockData, offsetInBlock, recordData, 0, recordSize);
-            } else {
-                System.arraycopy(blockData, offsetInBlock, recordData, 0, availableInBlock);
+        ByteBuffer probe = ByteBuffer.allocate(FileHeader.HEADER_SIZE);
+        probe.limit((int) Math.min(storage.size(fileName), FileHeader.HEADER_SIZE));
+        storage.read(fileName, 0, probe);
 
-                int bytesRead = availableInBlock;
-                int remainingBytes = recordSize - availableInBlock;
-                int nextBlockNumber = blockNumber + 1;
+        int version = FileHeader.readVersion(probe);
+        if (version != FileHeader.FORMAT_VERSION) {
+            throw new IOException("지원하지 않는 파일 형식 버전입니다 (" + version + "): " + fileName
+                    + ". 파일을 다시 생성하세요.");
+        }
 
-                while (remainingBytes > 0) {
-                    byte[] nextBlockData = readBlockData(fileName, nextBlockNumber);
+        int pageSize = FileHeader.readPageSize(probe);
+        pageSizes.put(fileName, pageSize);
+        return pageSize;
+    }
 
-                    int bytesToRead = Math.min(remainingBytes, Constants.BLOCK_SIZE);
+    // 데이터 블록의 래치. 페이지 내용을 읽는 동안 읽기 락을, 고치는 동안 쓰기 락을 잡는다
+    // 여러 블록이 한 래치를 나눠 쓰므로 래치를 잡은 채 다른 블록의 래치를 잡으면 안 된다
+    public ReadWriteLock getBlockLatch(String fileName, int blockNumber) {
+        int hash = fileName.hashCode() * 31 + blockNumber;
+        return blockLatches[Math.floorMod(hash ^ (hash >>> 16), blockLatches.length)];
+    }
 
-                    System.arraycopy(nextBlockData, 0, recordData, bytesRead, bytesToRead);
+    // 블록을 고정한다. 사용 후 반드시 unpinBlock 으로 해제해야 한다
+    public Page pinBlock(String fileName, int blockNumber) throws IOException {
+        int pageSize = getPageSize(fileName);
 
-                    bytesRead += bytesToRead;
-                    remainingBytes -= bytesToRead;
-                    nextBlockNumber++;
+        if (mappedFiles != null) {
+            long position = (long) blockNumber * pageSize;
+            return new Page(fileName, blockNumber, mappedFiles.writableView(fileName, position, pageSize));
+        }
+        long deadline = System.nanoTime() + TRANSACTION_WAIT_NANOS;
+        while (true) {
+            try {
+                return bufferPool.pin(fileName, blockNumber, pageSize);
+            } catch (IllegalStateException e) {
+                // 이 스레드의 트랜잭션이 붙잡은 페이지로 버퍼 풀이 찼으면 지금까지를 먼저 커밋하고 다시 시도한다
+                // 다른 트랜잭션이 붙잡고 있으면 커밋해서 놓아주기를 잠시 기다린다
+                Transaction transaction = transactions.get();
+                if (transaction != null && !transaction.pages.isEmpty()) {
+                    commitPages(transaction);
+                } else if (!awaitReleasedPages(deadline)) {
+                    throw e;
                 }
             }
+        }
+    }
 
-            return Record.fromBytes(recordData, fieldLengths, fieldNames);
+    private boolean awaitReleasedPages(long deadline) throws IOException {
+        synchronized (heldPages) {
+            long remaining = deadline - System.nanoTime();
+            if (heldPages.get() == 0 || remaining <= 0) {
+                return false;
+            }
+            try {
+                heldPages.wait(Math.max(1, remaining / 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("버퍼 프레임을 기다리다 중단되었습니다.");
+            }
+            return true;
+        }
+    }
 
-        } catch (IOException e) {
-            System.err.println("레코드 읽기 오류: " + e.getMessage());
-            throw e;
+    public void unpinBlock(Page page, boolean dirty) throws IOException {
+        if (!page.isPooled()) {
+            if (dirty) {
+                long end = (long) (page.getBlockNumber() + 1) * page.getPageSize();
+                mappedFiles.markWritten(page.getFileName(), end);
+            }
+            return;
         }
+
+        if (dirty && log != null) {
+            changedFiles.add(page.getFileName());
+
+            // 트랜잭션에서 처음 고친 페이지는 pin 을 남겨 커밋(로그 기록) 전에 디스크에 쓰이지 않게 한다
+            // 붙잡은 페이지가 버퍼 풀의 절반을 넘으면 다른 스레드가 쓸 프레임을 남기려고 지금까지를 먼저 커밋한다
+            // 그 사이에 비정상 종료되면 이 트랜잭션은 먼저 커밋한 부분까지만 복구된다
+            Transaction transaction = transactions.get();
+            if (transaction != null && !transaction.pages.contains(page)) {
+                bufferPool.markDirty(page);
+                transaction.pages.add(page);
+                if (heldPages.incrementAndGet() > bufferPoolSize / 2) {
+                    commitPages(transaction);
+                }
+                return;
+            }
+        }
+        bufferPool.unpin(page, dirty);
     }
 
-    public int getFileSize(String fileName) throws IOException {
-        String filePath = Constants.DATA_DIRECTORY + fileName;
+    // 이 스레드에서 트랜잭션을 시작한다. 파일 락을 잡은 뒤에 시작하고, 락을 풀기 전에 commitTransaction 으로 끝내야 한다
+    public void beginTransaction() {
+        if (log == null) {
+            return;
+        }
+        if (transactions.get() != null) {
+            throw new IllegalStateException("이미 진행 중인 트랜잭션이 있습니다.");
+        }
+        checkpointLock.readLock().lock();
+        transactions.set(new Transaction());
+    }
 
-        File file = new File(filePath);
-        if (!file.exists()) {
+    // 고친 페이지의 내용을 로그에 덧붙이고 pin 을 푼다. 로그가 디스크에 내려가기는 awaitDurable 로 기다린다
+    // 중간에 실패한 작업도 메모리에 남은 변경을 그대로 기록한다 (되돌리지 않는다). 고친 페이지가 없으면 0
+    public long commitTransaction() throws IOException {
+        Transaction transaction = transactions.get();
+        if (transaction == null) {
             return 0;
         }
+        transactions.remove();
+        try {
+            commitPages(transaction);
+            return transaction.commitLsn;
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+    }
 
-        return (int) Math.ceil(file.length() / (double) Constants.BLOCK_SIZE);
+    // 트랜잭션이 붙잡은 페이지가 버퍼 풀의 1/4 을 넘으면 지금까지를 커밋하고 이어 간다
+    // 레코드 여러 개를 고치는 작업이 레코드 사이에서 불러, 한 레코드를 고치는 중간에 나눠 커밋하는 일을 줄인다
+    public void commitIfLarge() throws IOException {
+        Transaction transaction = transactions.get();
+        if (transaction != null && transaction.pages.size() > bufferPoolSize / 4) {
+            commitPages(transaction);
+        }
     }
 
-    public void updateNextAvailablePosition(String fileName, int newPosition) {
-        nextAvailablePositions.put(fileName, newPosition);
+    private void commitPages(Transaction transaction) throws IOException {
+        if (transaction.pages.isEmpty()) {
+            return;
+        }
+        try {
+            transaction.commitLsn = log.commit(transaction.pages);
+        } finally {
+            for (Page page : transaction.pages) {
+                bufferPool.unpin(page, true);
+            }
+            heldPages.addAndGet(-transaction.pages.size());
+            transaction.pages.clear();
+            synchronized (heldPages) {
+                heldPages.notifyAll();
+            }
+        }
     }
 
-    public int getNextAvailablePosition(String fileName) {
-        return nextAvailablePositions.getOrDefault(fileName, Constants.BLOCK_SIZE);
+    // 커밋한 트랜잭션의 로그가 디스크에 내려갈 때까지 기다린다. 로그가 커졌으면 체크포인트를 한다
+    // 파일 락을 모두 푼 뒤에 불러야 같은 파일의 다음 커밋이 기다리지 않고 같은 fsync 에 묶인다
+    public void awaitDurable(long lsn) throws IOException {
+        if (log == null || lsn <= 0) {
+            return;
+        }
+        log.flush(lsn);
+        if (log.size() >= Constants.CHECKPOINT_LOG_SIZE) {
+            checkpoint(Constants.CHECKPOINT_LOG_SIZE);
+        }
     }
 
-    public void resetFile(String fileName) throws IOException {
-        byte[] headerBlock = new byte[Constants.BLOCK_SIZE];
-        Arrays.fill(headerBlock, 0, Constants.POINTER_SIZE, (byte) 0xFF);
+    // 고친 페이지를 모두 데이터 파일에 내리고 로그를 비운다. 진행 중인 트랜잭션이 끝나기를 기다린다
+    // 트랜잭션 안에서나 이 객체의 락을 잡은 채 부르면 안 된다
+    public void checkpoint() throws IOException {
+        checkpoint(0);
+    }
 
-        writeBlockData(fileName, 0, headerBlock);
+    private void checkpoint(long minLogSize) throws IOException {
+        if (log == null) {
+            return;
+        }
+        if (transactions.get() != null) {
+            throw new IllegalStateException("트랜잭션 안에서는 체크포인트를 할 수 없습니다.");
+        }
 
-        updateNextAvailablePosition(fileName, Constants.BLOCK_SIZE);
-        blockCache.put(fileName, new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
-            @Override
-            protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
-                return size() > CACHE_SIZE;
+        Lock lock = checkpointLock.writeLock();
+        lock.lock();
+        try {
+            // 기다리는 동안 다른 스레드가 먼저 했으면 건너뛴다
+            if (log.size() < minLogSize) {
+                return;
             }
-        });
+            flushAll();
+            for (String fileName : changedFiles) {
+                changedFiles.remove(fileName);
+                storage.force(fileName);
+            }
+            log.truncate();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public byte[] readBlockData(String fileName, int blockNumber) throws IOException {
+        if (blockNumber >= getFileSize(fileName)) {
+            throw new EOFException("파일 끝을 넘어선 블록: " + fileName + " #" + blockNumber);
+        }
+
+        byte[] blockData = new byte[getPageSize(fileName)];
+        Page page = pinBlock(fileName, blockNumber);
+        try {
+            page.getBuffer().get(0, blockData);
+            return blockData;
+        } finally {
+            unpinBlock(page, false);
+        }
+    }
+
+    public void writeBlockData(String fileName, int blockNumber, byte[] blockData) throws IOException {
+        // 버퍼 풀 모드에서 실제 디스크 쓰기는 페이지가 교체되거나 flush 될 때 한 번에 이루어진다
+        Page page = pinBlock(fileName, blockNumber);
+        try {
+            page.getBuffer().put(0, blockData, 0, page.getPageSize());
+        } finally {
+            unpinBlock(page, true);
+        }
+    }
+
+    public void flush(String fileName) throws IOException {
+        if (bufferPool != null) {
+            bufferPool.flush(fileName);
+        }
+        FreeSpaceMap freeSpaceMap = freeSpaceMaps.get(fileName);
+        if (freeSpaceMap != null) {
+            freeSpaceMap.save(storage, fileName);
+        }
+    }
+
+    public void flushAll() throws IOException {
+        if (bufferPool != null) {
+            bufferPool.flushAll();
+        }
+        for (Map.Entry<String, FreeSpaceMap> entry : freeSpaceMaps.entrySet()) {
+            entry.getValue().save(storage, entry.getKey());
+        }
+    }
+
+    // 첫 레코드 포인터 값 (레코드가 없으면 null)
+    public RecordPointer getFirstRecordPointer(String fileName) throws IOException {
+        Lock latch = getBlockLatch(fileName, 0).readLock();
+        latch.lock();
+        try {
+            Page headerPage = pinBlock(fileName, 0);
+            try {
+                return ByteUtils.readPointer(headerPage.getBuffer(), FileHeader.FIRST_RECORD_OFFSET);
+            } finally {
+                unpinBlock(headerPage, false);
+            }
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    public void updateFirstRecordPointer(String fileName, RecordPointer pointer) throws IOException {
+        // 헤더 블록은 페이지에서 직접 수정한다. 버퍼 풀 모드에서 디스크 쓰기는 flush 시점에 한 번만 일어난다
+        Lock latch = getBlockLatch(fileName, 0).writeLock();
+        latch.lock();
+        try {
+            Page headerPage = pinBlock(fileName, 0);
+            try {
+                ByteUtils.writePointer(headerPage.getBuffer(), FileHeader.FIRST_RECORD_OFFSET, pointer);
+            } finally {
+                unpinBlock(headerPage, true);
+            }
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    // 슬롯 디렉터리에서 레코드 위치를 찾아 페이지 한 번 접근으로 읽는다. 삭제된 슬롯이면 null
+    public Record readRecord(String fileName, RecordPointer pointer) throws IOException, SQLException {
+        if (pointer == null) {
+            return null;
+        }
+        return readRecord(fileName, pointer, catalog.getSchema(fileName));
+    }
+
+    // 스캔처럼 같은 파일을 여러 번 읽을 때는 스키마를 한 번만 가져와 넘긴다
+    public Record readRecord(String fileName, RecordPointer pointer, Schema schema) throws IOException {
+        return readSlot(fileName, pointer, (page, offset, length) -> Record.fromBuffer(page, offset, length, schema));
+    }
+
+    // 페이지 안의 레코드 바이트를 직접 해석하는 함수. 페이지는 호출 동안에만 유효하다
+    public interface SlotReader<T> {
+        T read(ByteBuffer page, int offset, int length) throws IOException;
+    }
+
+    // 레코드가 있는 페이지를 pin 한 채로 reader 에 넘긴다. 필요한 부분만 해석할 수 있다. 삭제된 슬롯이면 null
+    public <T> T readSlot(String fileName, RecordPointer pointer, SlotReader<T> reader) throws IOException {
+        if (pointer == null) {
+            return null;
+        }
+        return readSlot(fileName, pointer.getBlockNumber(), pointer.getSlotNumber(), reader);
+    }
+
+    public RecordPointer readNextPointer(String fileName, RecordPointer pointer) throws IOException {
+        return readSlot(fileName, pointer,
+                (page, offset, length) -> ByteUtils.readPointer(page, offset + length - Constants.POINTER_SIZE));
+    }
+
+    // 레코드의 다음 포인터만 제자리에서 바꾼다. 레코드 크기는 그대로이다
+    public void updateNextPointer(String fileName, RecordPointer pointer, RecordPointer next) throws IOException {
+        Lock latch = getBlockLatch(fileName, pointer.getBlockNumber()).writeLock();
+        boolean updated = false;
+        latch.lock();
+        try {
+            Page page = pinBlock(fileName, pointer.getBlockNumber());
+            try {
+                ByteBuffer blockData = page.getBuffer();
+                int slot = pointer.getSlotNumber();
+                if (SlottedPage.isLive(blockData, slot)) {
+                    int end = SlottedPage.getRecordOffset(blockData, slot) + SlottedPage.getRecordLength(blockData, slot);
+                    ByteUtils.writePointer(blockData, end - Constants.POINTER_SIZE, next);
+                    updated = true;
+                }
+            } finally {
+                unpinBlock(page, updated);
+            }
+        } finally {
+            latch.unlock();
+        }
+
+        if (!updated) {
+            throw new IOException("삭제된 레코드의 포인터는 바꿀 수 없습니다: " + pointer);
+        }
+    }
+
+    // 포인터 객체 없이 (블록, 슬롯) 으로 읽는다. 체인 스캔의 내부 루프용
+    // reader 는 블록의 읽기 래치를 잡은 채 불리므로 다른 블록에 접근하면 안 된다
+    public <T> T readSlot(String fileName, int blockNumber, int slot, SlotReader<T> reader) throws IOException {
+        return readSlot(fileName, blockNumber, slot, reader, null);
+    }
+
+    // 지웠지만 아직 회수하지 않은 레코드는 deletedReader 에 넘긴다 (null 이면 삭제된 슬롯처럼 null)
+    // 락 없이 체인을 따라가는 검색이, 읽는 사이에 지워진 레코드의 다음 포인터로 체인에 돌아오게 한다
+    public <T> T readSlot(String fileName, int blockNumber, int slot, SlotReader<T> reader,
+                          SlotReader<T> deletedReader) throws IOException {
+        Lock latch = getBlockLatch(fileName, blockNumber).readLock();
+        latch.lock();
+        try {
+            Page page = pinBlock(fileName, blockNumber);
+            try {
+                ByteBuffer blockData = page.getBuffer();
+
+                SlotReader<T> slotReader = reader;
+                if (!SlottedPage.isLive(blockData, slot)) {
+                    if (deletedReader == null || !SlottedPage.isDeleted(blockData, slot)) {
+                        return null;
+                    }
+                    slotReader = deletedReader;
+                }
+
+                int offset = SlottedPage.getRecordOffset(blockData, slot);
+                int length = SlottedPage.getRecordLength(blockData, slot);
+
+                return slotReader.read(blockData, offset, length);
+
+            } finally {
+                unpinBlock(page, false);
+            }
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    // 블록의 레코드를 markDeleted 로 지우고 체인과 인덱스에서 뗀 뒤 부른다. 지금 열린 스냅숏이 모두 닫히면 회수할 수 있다
+    // 파일의 쓰기 락을 잡은 쪽에서만 부른다
+    public void markDeleted(String fileName, int blockNumber) {
+        deletedBlocks.computeIfAbsent(fileName, name -> new ConcurrentHashMap<>())
+                .put(blockNumber, deleteSequence.incrementAndGet());
+    }
+
+    // 지운 뒤에 열린 스냅숏만 남은 블록의 지운 레코드를 툼스톤으로 바꿔 공간과 슬롯을 돌려준다
+    // 파일의 삽입 락이나 쓰기 락을 잡은 쪽에서 트랜잭션 안에서 부른다
+    // 표시만 하고 끝난 채 비정상 종료된 레코드는 회수하지 않으며, 다음 재구성이나 일괄 적재 때 사라진다
+    public void reclaimDeleted(String fileName) throws IOException {
+        Map<Integer, Long> blocks = deletedBlocks.get(fileName);
+        if (blocks == null || blocks.isEmpty()) {
+            return;
+        }
+        long oldestScan;
+        synchronized (openScans) {
+            oldestScan = openScans.isEmpty() ? Long.MAX_VALUE : openScans.firstKey();
+        }
+
+        FreeSpaceMap freeSpaceMap = getFreeSpaceMap(fileName);
+        Iterator<Map.Entry<Integer, Long>> iterator = blocks.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, Long> entry = iterator.next();
+            // 이 블록에서 마지막으로 지우기 전에 연 스냅숏이 남아 있다
+            if (entry.getValue() > oldestScan) {
+                continue;
+            }
+            int blockNumber = entry.getKey();
+            Lock latch = getBlockLatch(fileName, blockNumber).writeLock();
+            latch.lock();
+            try {
+                Page page = pinBlock(fileName, blockNumber);
+                boolean reclaimed = false;
+                try {
+                    reclaimed = SlottedPage.reclaim(page.getBuffer());
+                    freeSpaceMap.update(blockNumber, SlottedPage.getFreeSpace(page.getBuffer()));
+                } finally {
+                    unpinBlock(page, reclaimed);
+                }
+            } finally {
+                latch.unlock();
+            }
+            iterator.remove();
+        }
+    }
+
+    public int getFileSize(String fileName) throws IOException {
+        int pageSize = getPageSize(fileName);
+        if (bufferPool != null) {
+            return bufferPool.getBlockCount(fileName, pageSize);
+        }
+        return (int) Math.ceil(storage.size(fileName) / (double) pageSize);
+    }
+
+    // 새 레코드를 채워 넣고 있는 블록 번호 (high-water mark). 다시 시작해도 이어 쓰도록 헤더 블록에 기록한다
+    public void updateAppendBlockNumber(String fileName, int blockNumber) throws IOException {
+        Integer previous = appendBlockNumbers.put(fileName, blockNumber);
+        if (previous != null && previous == blockNumber) {
+            return;
+        }
+
+        Lock latch = getBlockLatch(fileName, 0).writeLock();
+        latch.lock();
+        try {
+            Page headerPage = pinBlock(fileName, 0);
+            try {
+                headerPage.getBuffer().putInt(FileHeader.APPEND_BLOCK_OFFSET, blockNumber);
+            } finally {
+                unpinBlock(headerPage, true);
+            }
+        } finally {
+            latch.unlock();
+        }
+    }
+
+    public int getAppendBlockNumber(String fileName) throws IOException {
+        Integer cached = appendBlockNumbers.get(fileName);
+        if (cached != null) {
+            return cached;
+        }
+
+        int blockNumber;
+        Lock latch = getBlockLatch(fileName, 0).readLock();
+        latch.lock();
+        try {
+            Page headerPage = pinBlock(fileName, 0);
+            try {
+                blockNumber = headerPage.getBuffer().getInt(FileHeader.APPEND_BLOCK_OFFSET);
+            } finally {
+                unpinBlock(headerPage, false);
+            }
+        } finally {
+            latch.unlock();
+        }
+
+        // 기록이 없는 파일은 마지막 블록부터 이어 쓴다 (블록 0을 덮어쓰지 않도록)
+        if (blockNumber < 1) {
+            blockNumber = Math.max(1, getFileSize(fileName) - 1);
+        }
+        appendBlockNumbers.put(fileName, blockNumber);
+        return blockNumber;
+    }
+
+    public void close() {
+        deleteRetiredGenerations();
+        try {
+            for (String fileName : deletedBlocks.keySet()) {
+                reclaimDeleted(fileName);
+            }
+            if (log != null) {
+                checkpoint();
+                log.close();
+            } else {
+                flushAll();
+            }
+            storage.close();
+        } catch (IOException e) {
+            System.err.println("데이터 파일 닫기 중 오류 발생: " + e.getMessage());
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,137 @@
+package dbms;
+
+import dbms.util.Constants;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// 데이터 디렉터리의 카탈로그 파일(catalog.dat)에 스키마를 저장한다. DB 서버 없이 동작한다
+// 시작할 때 전부 메모리에 올리고, createTable 마다 임시 파일에 쓴 뒤 원자적으로 바꿔치기한다
+//
+// 파일 형식: [매직 4바이트][버전 2바이트][테이블 수 4바이트]
+//           테이블마다 [이름][필드 수 2바이트] + 필드마다 [이름][타입][선언 길이 4바이트] (이름과 타입은 writeUTF)
+// 버전 1 파일은 필드 타입이 없으며 모두 CHAR 로 읽는다
+public class EmbeddedCatalog implements Catalog {
+    public static final String CATALOG_FILE_NAME = "catalog.dat";
+
+    private static final int MAGIC = 0x44424354; // "DBCT"
+    private static final int VERSION = 2;
+
+    private final File catalogFile;
+    private final Map<String, Schema> schemas = new LinkedHashMap<>();
+
+    public EmbeddedCatalog() throws IOException {
+        this(Constants.DATA_DIRECTORY);
+    }
+
+    public EmbeddedCatalog(String directory) throws IOException {
+        this.catalogFile = new File(directory, CATALOG_FILE_NAME);
+        if (catalogFile.exists()) {
+            load();
+        }
+    }
+
+    @Override
+    public synchronized void createTable(String fileName, Schema schema) throws IOException {
+        Schema previous = schemas.put(fileName, schema);
+        try {
+            save();
+        } catch (IOException e) {
+            // 디스크에 반영되지 않았으면 메모리도 이전 상태로 되돌린다
+            if (previous != null) {
+                schemas.put(fileName, previous);
+            } else {
+                schemas.remove(fileName);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized Schema getSchema(String fileName) {
+        return schemas.get(fileName);
+    }
+
+    @Override
+    public synchronized boolean fileExists(String fileName) {
+        return schemas.containsKey(fileName);
+    }
+
+    @Override
+    public void close() {
+        // 변경은 createTable 시점에 이미 파일에 반영되어 있다
+    }
+
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(catalogFile)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("카탈로그 파일 형식이 아닙니다: " + catalogFile);
+            }
+            int version = in.readUnsignedShort();
+            if (version != 1 && version != VERSION) {
+                throw new IOException("지원하지 않는 카탈로그 버전입니다 (" + version + "): " + catalogFile);
+            }
+
+            int tableCount = in.readInt();
+            for (int t = 0; t < tableCount; t++) {
+                String fileName = in.readUTF();
+                int fieldCount = in.readUnsignedShort();
+
+                List<String> fieldNames = new ArrayList<>(fieldCount);
+                List<FieldType> fieldTypes = new ArrayList<>(fieldCount);
+                List<Integer> fieldLengths = new ArrayList<>(fieldCount);
+                for (int i = 0; i < fieldCount; i++) {
+                    fieldNames.add(in.readUTF());
+                    fieldTypes.add(version == 1 ? FieldType.CHAR : FieldType.fromString(in.readUTF()));
+                    fieldLengths.add(in.readInt());
+                }
+                schemas.put(fileName, new Schema(fieldNames, fieldTypes, fieldLengths));
+            }
+        }
+    }
+
+    private void save() throws IOException {
+        File directory = catalogFile.getAbsoluteFile().getParentFile();
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+
+        File tempFile = new File(directory, CATALOG_FILE_NAME + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tempFile);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(schemas.size());
+
+            for (Map.Entry<String, Schema> entry : schemas.entrySet()) {
+                Schema schema = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeShort(schema.getFieldCount());
+                for (int i = 0; i < schema.getFieldCount(); i++) {
+                    out.writeUTF(schema.getFieldName(i));
+                    out.writeUTF(schema.getFieldType(i).name());
+                    out.writeInt(schema.getDeclaredLength(i));
+                }
+            }
+
+            out.flush();
+            fileOut.getFD().sync();
+        }
+
+        // 중간에 중단되어도 이전 카탈로그나 새 카탈로그 중 하나만 보이도록 이름을 바꿔 교체한다
+        Files.move(tempFile.toPath(), catalogFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,177 @@
+package dbms;
+
+import dbms.util.ByteUtils;
+import dbms.util.Constants;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+// 필드 타입과 레코드 안의 바이너리 형식
+// 숫자 타입은 부호 비트를 뒤집은 빅 엔디언으로 저장하므로 바이트를 부호 없이 비교한 순서가 값의 순서와 같다
+//
+// 선언 길이의 의미: CHAR 와 VARCHAR 는 최대 바이트 수, DECIMAL 은 소수점 이하 자릿수, 나머지 타입은 쓰지 않는다
+public enum FieldType {
+    CHAR(0),        // UTF-8, 선언 길이만큼 0으로 채운다
+    VARCHAR(0),     // [길이 2바이트][UTF-8], 실제 길이만큼만 차지한다
+    INT(4),
+    BIGINT(8),
+    DATE(4),        // 1970-01-01 부터의 일 수
+    DECIMAL(8);     // 소수점 이하 자릿수만큼 올린 정수 (최대 18자리)
+
+    public static final int MAX_DECIMAL_SCALE = 18;
+
+    private final int fixedLength; // 0 이면 선언 길이를 그대로 쓴다
+
+    FieldType(int fixedLength) {
+        this.fixedLength = fixedLength;
+    }
+
+    public static FieldType fromString(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return CHAR;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("지원하지 않는 필드 타입입니다: " + value);
+        }
+    }
+
+    public boolean isVariableLength() {
+        return this == VARCHAR;
+    }
+
+    // 레코드 안에서 차지하는 최대 바이트 수
+    public int getStorageLength(int declaredLength) {
+        if (this == VARCHAR) {
+            return Constants.LENGTH_PREFIX_SIZE + declaredLength;
+        }
+        return fixedLength > 0 ? fixedLength : declaredLength;
+    }
+
+    // 인덱스에 저장하는 키 바이트 수 (길이 접두어 제외)
+    public int getKeyLength(int declaredLength) {
+        return fixedLength > 0 ? fixedLength : declaredLength;
+    }
+
+    public void validateLength(int declaredLength) {
+        if ((this == CHAR || this == VARCHAR) && declaredLength <= 0) {
+            throw new IllegalArgumentException(name() + " 필드 길이는 0보다 커야 합니다: " + declaredLength);
+        }
+        if (this == VARCHAR && declaredLength > 0xFFFF) {
+            throw new IllegalArgumentException("VARCHAR 필드 길이는 65535바이트를 넘을 수 없습니다: " + declaredLength);
+        }
+        if (this == DECIMAL && (declaredLength < 0 || declaredLength > MAX_DECIMAL_SCALE)) {
+            throw new IllegalArgumentException("DECIMAL 소수점 이하 자릿수는 0~" + MAX_DECIMAL_SCALE + " 사이여야 합니다: " + declaredLength);
+        }
+    }
+
+    // 문자열 값을 바이너리로 바꿔 buffer 의 position 에 쓰고 쓴 바이트 수를 돌려준다. 형식이 틀리면 IllegalArgumentException
+    public int write(ByteBuffer buffer, int position, int declaredLength, String value) {
+        try {
+            switch (this) {
+                case VARCHAR:
+                    byte[] bytes = ByteUtils.encodeKey(value, declaredLength);
+                    buffer.putShort(position, (short) bytes.length);
+                    buffer.put(position + Constants.LENGTH_PREFIX_SIZE, bytes);
+                    return Constants.LENGTH_PREFIX_SIZE + bytes.length;
+                case INT:
+                    buffer.putInt(position, Integer.parseInt(value) ^ Integer.MIN_VALUE);
+                    break;
+                case BIGINT:
+                    buffer.putLong(position, Long.parseLong(value) ^ Long.MIN_VALUE);
+                    break;
+                case DATE:
+                    buffer.putInt(position, Math.toIntExact(LocalDate.parse(value).toEpochDay()) ^ Integer.MIN_VALUE);
+                    break;
+                case DECIMAL:
+                    long unscaled = new BigDecimal(value).setScale(declaredLength, RoundingMode.HALF_UP)
+                            .unscaledValue().longValueExact();
+                    buffer.putLong(position, unscaled ^ Long.MIN_VALUE);
+                    break;
+                default:
+                    buffer.put(position, ByteUtils.stringToBytes(value, declaredLength));
+            }
+            return getStorageLength(declaredLength);
+        } catch (NumberFormatException | DateTimeParseException | ArithmeticException e) {
+            throw new IllegalArgumentException(name() + " 값 형식이 잘못되었습니다: " + value);
+        }
+    }
+
+    public String read(ByteBuffer buffer, int position, int declaredLength) {
+        switch (this) {
+            case VARCHAR:
+                return ByteUtils.bytesToString(buffer, position + Constants.LENGTH_PREFIX_SIZE, readLength(buffer, position));
+            case INT:
+                return Integer.toString(buffer.getInt(position) ^ Integer.MIN_VALUE);
+            case BIGINT:
+                return Long.toString(buffer.getLong(position) ^ Long.MIN_VALUE);
+            case DATE:
+                return LocalDate.ofEpochDay(buffer.getInt(position) ^ Integer.MIN_VALUE).toString();
+            case DECIMAL:
+                return BigDecimal.valueOf(buffer.getLong(position) ^ Long.MIN_VALUE, declaredLength).toPlainString();
+            default:
+                return ByteUtils.bytesToString(buffer, position, declaredLength);
+        }
+    }
+
+    // position 에 저장된 값이 실제로 차지하는 바이트 수
+    public int sizeAt(ByteBuffer buffer, int position, int declaredLength) {
+        if (this == VARCHAR) {
+            return Constants.LENGTH_PREFIX_SIZE + readLength(buffer, position);
+        }
+        return getStorageLength(declaredLength);
+    }
+
+    // 값을 쓸 때 차지할 바이트 수
+    public int encodedLength(String value, int declaredLength) {
+        if (this == VARCHAR) {
+            return Constants.LENGTH_PREFIX_SIZE + ByteUtils.encodeKey(value, declaredLength).length;
+        }
+        return getStorageLength(declaredLength);
+    }
+
+    // position 에 저장된 값의 바이트를 dst 에 복사하고 길이를 돌려준다 (VARCHAR 는 길이 접두어 제외)
+    public int copyBytes(ByteBuffer buffer, int position, int declaredLength, byte[] dst) {
+        if (this == VARCHAR) {
+            int length = readLength(buffer, position);
+            buffer.get(position + Constants.LENGTH_PREFIX_SIZE, dst, 0, length);
+            return length;
+        }
+        int length = getStorageLength(declaredLength);
+        buffer.get(position, dst, 0, length);
+        return length;
+    }
+
+    // position 에 저장된 값과 encodeKey 로 만든 key 를 부호 없는 바이트 순서로 비교한다
+    public int compareKey(ByteBuffer buffer, int position, int declaredLength, byte[] key) {
+        if (this == VARCHAR) {
+            return ByteUtils.compareKey(buffer, position + Constants.LENGTH_PREFIX_SIZE, readLength(buffer, position), key);
+        }
+        return ByteUtils.compareKey(buffer, position, getStorageLength(declaredLength), key);
+    }
+
+    // 저장되는 형태의 키 바이트 (CHAR 는 0 패딩을 뺀다). 검색 범위와 인덱스 키에 쓴다
+    // null 이거나, CHAR 가 아닌 타입에서 빈 값이면 null (검색 범위 제한 없음)
+    public byte[] encodeKey(String value, int declaredLength) {
+        if (value == null) {
+            return null;
+        }
+        if (this == CHAR || this == VARCHAR) {
+            return ByteUtils.encodeKey(value, declaredLength);
+        }
+        if (value.trim().isEmpty()) {
+            return null;
+        }
+        byte[] key = new byte[fixedLength];
+        write(ByteBuffer.wrap(key), 0, declaredLength, value);
+        return key;
+    }
+
+    private static int readLength(ByteBuffer buffer, int position) {
+        return buffer.getShort(position) & 0xFFFF;
+    }
+}
@@ -1,5 +1,7 @@
 package dbms;
 
+import dbms.server.QueryServer;
+import dbms.storage.StorageMode;
 import dbms.util.Constants;
 import dbms.util.RecordPointer;
 
@@ -14,26 +16,75 @@ public class Main {
     private static final String DB_USERNAME = "root";
     private static final String DB_PASSWORD = "2264";
 
-    private static MetadataManager metadataManager;
+    private static Catalog catalog;
     private static DiskFileManager diskFileManager;
     private static RecordManager recordManager;
     private static QueryManager queryManager;
 
     public static void main(String[] args) {
         try {
-            metadataManager = new MetadataManager(JDBC_URL, DB_USERNAME, DB_PASSWORD);
-            diskFileManager = new DiskFileManager(metadataManager);
-            recordManager = new RecordManager(diskFileManager, metadataManager);
-            queryManager = new QueryManager(recordManager, metadataManager);
+            // -Ddbms.catalog=embedded 로 MySQL 없이 데이터 디렉터리의 카탈로그 파일을 사용한다
+            if ("embedded".equalsIgnoreCase(System.getProperty("dbms.catalog"))) {
+                catalog = new EmbeddedCatalog();
+            } else {
+                catalog = new MetadataManager(JDBC_URL, DB_USERNAME, DB_PASSWORD);
+            }
+            System.out.println("카탈로그: " + (catalog instanceof EmbeddedCatalog ? "embedded" : "MySQL"));
+            // -Ddbms.storage=mmap 으로 메모리 매핑 저장소를, -Ddbms.bufferPoolSize=N 으로 버퍼 풀 프레임 수를 지정할 수 있다
+            // -Ddbms.bulkLoadMemory=바이트 로 일괄 적재 시 메모리에서 정렬할 크기를 정한다 (넘치면 임시 파일로 나눠 정렬)
+            // -Ddbms.wal=off 로 선행 기록 로그를 끈다 (CHANNEL 모드에서만 쓰며, 끄면 비정상 종료 후 복구하지 않는다)
+            StorageMode storageMode = StorageMode.fromString(System.getProperty("dbms.storage"));
+            int bufferPoolSize = Integer.getInteger("dbms.bufferPoolSize", Constants.BUFFER_POOL_SIZE);
+            boolean writeAheadLog = !"off".equalsIgnoreCase(System.getProperty("dbms.wal"));
+            diskFileManager = new DiskFileManager(catalog, storageMode, bufferPoolSize, writeAheadLog);
+            System.out.println("저장소 모드: " + storageMode);
+            long bulkLoadMemory = Long.getLong("dbms.bulkLoadMemory", Constants.BULK_LOAD_MEMORY);
+            recordManager = new RecordManager(diskFileManager, catalog, bulkLoadMemory);
+            // -Ddbms.reorganizeThreshold=0.3 처럼 지정하면 클러스터링 계수가 그 값을 넘을 때 파일을 자동으로 재구성한다
+            String reorganizeThreshold = System.getProperty("dbms.reorganizeThreshold");
+            if (reorganizeThreshold != null) {
+                recordManager.setReorganizeThreshold(Double.parseDouble(reorganizeThreshold));
+            }
+            // -Ddbms.loadThreads=N 으로 일괄 적재 입력을 파싱할 스레드 수를 정한다 (기본은 CPU 수)
+            Integer loadThreads = Integer.getInteger("dbms.loadThreads");
+            if (loadThreads != null) {
+                recordManager.setLoadThreads(loadThreads);
+            }
+            queryManager = new QueryManager(recordManager, catalog);
 
-            startUserInterface();
-            metadataManager.close();
+            // --server [포트] 로 메뉴 대신 루프백 주소에서 질의 서버를 실행한다
+            if (args.length > 0 && "--server".equals(args[0])) {
+                runServer(args.length > 1 ? Integer.parseInt(args[1]) : QueryServer.DEFAULT_PORT);
+            } else {
+                startUserInterface();
+            }
+            diskFileManager.close();
+            catalog.close();
 
         } catch (SQLException e) {
             System.err.println("데이터베이스 연결 오류: " + e.getMessage());
+        } catch (IOException e) {
+            System.err.println("카탈로그 파일 읽기 오류: " + e.getMessage());
         }
     }
 
+    // 종료 신호(Ctrl+C)를 받으면 처리 중인 연결을 정리한 뒤 main 이 파일을 닫을 때까지 기다린다
+    private static void runServer(int port) throws IOException {
+        QueryServer server = new QueryServer(recordManager, catalog, port);
+        Thread mainThread = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+                mainThread.join();
+            } catch (IOException | InterruptedException e) {
+                System.err.println("서버 종료 중 오류 발생: " + e.getMessage());
+            }
+        }));
+
+        server.serve();
+        server.close();
+    }
+
     private static void startUserInterface() {
         Scanner scanner = new Scanner(System.in);
 
@@ -44,6 +95,12 @@ public class Main {
             System.out.println("2. 레코드 삽입 (bulk load)");
             System.out.println("3. 필드 검색");
             System.out.println("4. 레코드 검색 (search key 범위 지정)");
+            System.out.println("5. 파일 재구성 (키 순서로 다시 쓰기)");
+            System.out.println("6. 레코드 삽입 (한 건)");
+            System.out.println("7. 레코드 삭제");
+            System.out.println("8. 레코드 수정");
+            System.out.println("9. 인덱스 생성 (CREATE INDEX)");
+            System.out.println("10. 동등 조건 검색 (필드 = 값)");
             System.out.print("선택하세요: ");
 
             String choice = scanner.nextLine();
@@ -61,6 +118,24 @@ public class Main {
                 case "4":
                     searchRecords(scanner);
                     break;
+                case "5":
+                    reorganizeFile(scanner);
+                    break;
+                case "6":
+                    insertRecord(scanner);
+                    break;
+                case "7":
+                    deleteRecords(scanner);
+                    break;
+                case "8":
+                    updateRecords(scanner);
+                    break;
+                case "9":
+                    createIndex(scanner);
+                    break;
+                case "10":
+                    searchEqual(scanner);
+                    break;
                 case "0":
                     System.out.println("프로그램을 종료합니다.");
                     return;
@@ -81,7 +156,7 @@ public class Main {
             int fieldCount = Integer.parseInt(scanner.nextLine());
 
             List<String> fieldNames = new ArrayList<>();
-            List<String> fieldTypes = new ArrayList<>();
+            List<FieldType> fieldTypes = new ArrayList<>();
             List<Integer> fieldLengths = new ArrayList<>();
 
             for (int i = 0; i < fieldCount; i++) {
@@ -91,25 +166,41 @@ public class Main {
                 String fieldName = scanner.nextLine();
                 fieldNames.add(fieldName);
 
-                // 고정길이 문자열 타입만 사용
-                fieldTypes.add(Constants.CHAR_TYPE);
-
-                System.out.print("필드 길이 (문자 수): ");
-                int fieldLength = Integer.parseInt(scanner.nextLine());
+                System.out.print("필드 타입 (CHAR, VARCHAR, INT, BIGINT, DATE, DECIMAL, 엔터 시 CHAR): ");
+                FieldType fieldType = FieldType.fromString(scanner.nextLine());
+                fieldTypes.add(fieldType);
+
+                // 숫자와 날짜 타입은 크기가 정해져 있다
+                int fieldLength;
+                if (fieldType == FieldType.CHAR) {
+                    System.out.print("필드 길이 (문자 수): ");
+                    fieldLength = Integer.parseInt(scanner.nextLine());
+                } else if (fieldType == FieldType.VARCHAR) {
+                    System.out.print("최대 필드 길이 (바이트 수): ");
+                    fieldLength = Integer.parseInt(scanner.nextLine());
+                } else if (fieldType == FieldType.DECIMAL) {
+                    System.out.print("소수점 이하 자릿수: ");
+                    fieldLength = Integer.parseInt(scanner.nextLine());
+                } else {
+                    fieldLength = fieldType.getStorageLength(0);
+                }
                 fieldLengths.add(fieldLength);
             }
 
-            // 순차 파일 생성 + 헤더블록 초기화
-            diskFileManager.createSequentialFile(fileName, fieldNames, fieldTypes, fieldLengths);
+            System.out.print("페이지 크기 (바이트, 엔터 시 " + Constants.DEFAULT_PAGE_SIZE + "): ");
+            String pageSizeInput = scanner.nextLine().trim();
+            int pageSize = pageSizeInput.isEmpty() ? Constants.DEFAULT_PAGE_SIZE : Integer.parseInt(pageSizeInput);
+
+            Schema schema = new Schema(fieldNames, fieldTypes, fieldLengths);
 
-            // MySQL 테이블 생성
-            metadataManager.createTable(fileName, fieldNames, fieldLengths);
+            // 순차 파일 생성 + 헤더블록 초기화 + 카탈로그에 테이블 등록
+            recordManager.createTable(fileName, schema, pageSize);
 
             System.out.println("파일이 성공적으로 생성되었습니다.");
 
         } catch (NumberFormatException e) {
             System.err.println("잘못된 숫자 형식입니다.");
-        } catch (IOException | SQLException e) {
+        } catch (IllegalArgumentException | IOException | SQLException e) {
             System.err.println("파일 생성 중 오류 발생: " + e.getMessage());
         }
     }
@@ -125,7 +216,7 @@ public class Main {
             String fileName = scanner.nextLine();
 
             // 파일 존재 확인
-            if (!metadataManager.fileExists(fileName)) {
+            if (!catalog.fileExists(fileName)) {
                 System.out.println("존재하지 않는 파일입니다.");
                 return;
             }
@@ -137,12 +228,12 @@ public class Main {
             // 레코드 삽입
             recordManager.bulkInsertRecords(fileName, dataFilePath);
 
-            try {
+            try (DiskFileManager.Snapshot snapshot = diskFileManager.openSnapshot(fileName)) {
                 // 첫 레코드 포인터 가져오기
-                int firstRecordOffset = diskFileManager.getFirstRecordPointer(fileName);
-                if (firstRecordOffset >= 0) {
-                    RecordPointer firstRecordPointer = diskFileManager.offsetToPointer(firstRecordOffset);
-                    Record firstRecord = diskFileManager.readRecord(fileName, firstRecordPointer);
+                RecordPointer firstRecordPointer = diskFileManager.getFirstRecordPointer(snapshot.getFileName());
+                if (firstRecordPointer != null) {
+                    Record firstRecord = diskFileManager.readRecord(snapshot.getFileName(), firstRecordPointer,
+                            snapshot.getSchema());
                 }
             } catch (Exception e) {
                 System.err.println("레코드 바이트 정보 출력 중 오류: " + e.getMessage());
@@ -163,13 +254,13 @@ public class Main {
 
         try {
             // 파일 존재 확인
-            if (!metadataManager.fileExists(fileName)) {
+            if (!catalog.fileExists(fileName)) {
                 System.out.println("존재하지 않는 파일입니다.");
                 return;
             }
 
             // 필드 목록 출력
-            List<String> fieldNames = metadataManager.getFieldNames(fileName);
+            List<String> fieldNames = catalog.getFieldNames(fileName);
             System.out.println("사용 가능한 필드:");
             for (int i = 0; i < fieldNames.size(); i++) {
                 System.out.println((i + 1) + ". " + fieldNames.get(i));
@@ -193,12 +284,12 @@ public class Main {
         String fileName = scanner.nextLine();
 
         try {
-            if (!metadataManager.fileExists(fileName)) {
+            if (!catalog.fileExists(fileName)) {
                 System.out.println("존재하지 않는 파일입니다.");
                 return;
             }
 
-            String searchKeyField = metadataManager.getFieldNames(fileName).get(0);
+            String searchKeyField = catalog.getFieldNames(fileName).get(0);
             System.out.println("검색 키 필드: " + searchKeyField);
 
             System.out.print("최소값 입력: ");
@@ -207,10 +298,178 @@ public class Main {
             System.out.print("최대값 입력: ");
             String maxKey = scanner.nextLine();
 
-            queryManager.processRecordSearch(fileName, minKey, maxKey);
+            System.out.print("건너뛸 결과 수 (엔터 시 0): ");
+            String offsetInput = scanner.nextLine().trim();
+            long offset = offsetInput.isEmpty() ? 0 : Long.parseLong(offsetInput);
+
+            System.out.print("최대 출력 수 (엔터 시 전체): ");
+            String limitInput = scanner.nextLine().trim();
+            long limit = limitInput.isEmpty() ? Long.MAX_VALUE : Long.parseLong(limitInput);
+
+            queryManager.processRecordSearch(fileName, minKey, maxKey, offset, limit);
+
+        } catch (NumberFormatException e) {
+            System.err.println("잘못된 숫자 형식입니다.");
+        } catch (SQLException e) {
+            System.err.println("레코드 검색 중 오류 발생: " + e.getMessage());
+        }
+    }
+
+    private static void reorganizeFile(Scanner scanner) {
+        System.out.println("\n=== 파일 재구성 ===");
+
+        System.out.print("파일명 입력: ");
+        String fileName = scanner.nextLine();
+
+        try {
+            if (!catalog.fileExists(fileName)) {
+                System.out.println("존재하지 않는 파일입니다.");
+                return;
+            }
+
+            System.out.printf("클러스터링 계수 (재구성 전): %.3f%n", recordManager.getClusteringFactor(fileName));
+            recordManager.reorganize(fileName);
+            System.out.printf("클러스터링 계수 (재구성 후): %.3f%n", recordManager.getClusteringFactor(fileName));
+
+        } catch (IOException | SQLException e) {
+            System.err.println("파일 재구성 중 오류 발생: " + e.getMessage());
+        }
+    }
+
+    private static void insertRecord(Scanner scanner) {
+        System.out.println("\n=== 레코드 삽입 (한 건) ===");
+
+        System.out.print("파일명 입력: ");
+        String fileName = scanner.nextLine();
+
+        try {
+            if (!catalog.fileExists(fileName)) {
+                System.out.println("존재하지 않는 파일입니다.");
+                return;
+            }
+
+            Schema schema = catalog.getSchema(fileName);
+            System.out.print("필드 값 입력 (" + String.join(Constants.DELIMITER, schema.getFieldNames()) + "): ");
+            Record record = new Record(RecordManager.parseValues(scanner.nextLine(), schema), schema);
+
+            RecordPointer pointer = recordManager.insert(fileName, record);
+            System.out.println("레코드를 삽입했습니다: " + pointer);
+
+        } catch (IllegalArgumentException e) {
+            System.err.println("잘못된 레코드입니다: " + e.getMessage());
+        } catch (IOException | SQLException e) {
+            System.err.println("레코드 삽입 중 오류 발생: " + e.getMessage());
+        }
+    }
+
+    private static void deleteRecords(Scanner scanner) {
+        System.out.println("\n=== 레코드 삭제 ===");
+
+        System.out.print("파일명 입력: ");
+        String fileName = scanner.nextLine();
+
+        try {
+            if (!catalog.fileExists(fileName)) {
+                System.out.println("존재하지 않는 파일입니다.");
+                return;
+            }
+
+            System.out.print("삭제할 검색 키 값 입력: ");
+            String key = scanner.nextLine();
+
+            int count = recordManager.delete(fileName, key);
+            System.out.println(count + "개의 레코드를 삭제했습니다.");
+
+        } catch (IllegalArgumentException e) {
+            System.err.println("잘못된 검색 키입니다: " + e.getMessage());
+        } catch (IOException | SQLException e) {
+            System.err.println("레코드 삭제 중 오류 발생: " + e.getMessage());
+        }
+    }
+
+    private static void updateRecords(Scanner scanner) {
+        System.out.println("\n=== 레코드 수정 ===");
+
+        System.out.print("파일명 입력: ");
+        String fileName = scanner.nextLine();
+
+        try {
+            if (!catalog.fileExists(fileName)) {
+                System.out.println("존재하지 않는 파일입니다.");
+                return;
+            }
+
+            Schema schema = catalog.getSchema(fileName);
+            System.out.print("수정할 검색 키 값 입력: ");
+            String key = scanner.nextLine();
+
+            System.out.print("새 필드 값 입력 (" + String.join(Constants.DELIMITER, schema.getFieldNames()) + "): ");
+            List<String> values = RecordManager.parseValues(scanner.nextLine(), schema);
+
+            int count = recordManager.update(fileName, key, values);
+            System.out.println(count + "개의 레코드를 수정했습니다.");
+
+        } catch (IllegalArgumentException e) {
+            System.err.println("잘못된 값입니다: " + e.getMessage());
+        } catch (IOException | SQLException e) {
+            System.err.println("레코드 수정 중 오류 발생: " + e.getMessage());
+        }
+    }
+
+    private static void createIndex(Scanner scanner) {
+        System.out.println("\n=== 인덱스 생성 ===");
+
+        System.out.print("파일명 입력: ");
+        String fileName = scanner.nextLine();
+
+        try {
+            if (!catalog.fileExists(fileName)) {
+                System.out.println("존재하지 않는 파일입니다.");
+                return;
+            }
+
+            // 첫 번째 필드(검색 키)는 B+ 트리 인덱스가 이미 있다
+            List<String> fieldNames = catalog.getFieldNames(fileName);
+            System.out.println("인덱스를 만들 수 있는 필드:");
+            for (int i = 1; i < fieldNames.size(); i++) {
+                System.out.println(i + ". " + fieldNames.get(i));
+            }
+
+            System.out.print("필드 이름 입력: ");
+            String fieldName = scanner.nextLine();
+
+            recordManager.createIndex(fileName, fieldName);
+
+        } catch (IllegalArgumentException e) {
+            System.err.println("인덱스를 만들 수 없습니다: " + e.getMessage());
+        } catch (IOException | SQLException e) {
+            System.err.println("인덱스 생성 중 오류 발생: " + e.getMessage());
+        }
+    }
+
+    private static void searchEqual(Scanner scanner) {
+        System.out.println("\n=== 동등 조건 검색 ===");
+
+        System.out.print("파일명 입력: ");
+        String fileName = scanner.nextLine();
+
+        try {
+            if (!catalog.fileExists(fileName)) {
+                System.out.println("존재하지 않는 파일입니다.");
+                return;
+            }
+
+            System.out.println("사용 가능한 필드: " + String.join(", ", catalog.getFieldNames(fileName)));
+            System.out.print("필드 이름 입력: ");
+            String fieldName = scanner.nextLine();
+
+            System.out.print("값 입력: ");
+            String value = scanner.nextLine();
+
+            queryManager.processEqualitySearch(fileName, fieldName, value);
 
         } catch (SQLException e) {
             System.err.println("레코드 검색 중 오류 발생: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
@@ -2,10 +2,14 @@ package dbms;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
-public class MetadataManager {
+// MySQL 테이블로 필드 구성을 저장하고 DatabaseMetaData 로 읽어 오는 카탈로그
+public class MetadataManager implements Catalog {
     private Connection connection;
+    private Map<String, Schema> schemas = new HashMap<>(); // 파일별 스키마 캐시. createTable 로만 무효화된다
 
     public MetadataManager(String jdbcUrl, String username, String password) throws SQLException {
         try {
@@ -16,16 +20,17 @@ public class MetadataManager {
         }
     }
 
-    public void createTable(String fileName, List<String> fieldNames, List<Integer> fieldLengths) throws SQLException {
+    @Override
+    public synchronized void createTable(String fileName, Schema schema) throws SQLException {
         String dropTableSQL = "DROP TABLE IF EXISTS " + fileName;
         try (Statement stmt = connection.createStatement()) {
             stmt.executeUpdate(dropTableSQL);
         }
 
         StringBuilder createTableSQL = new StringBuilder("CREATE TABLE " + fileName + " (");
-        for (int i = 0; i < fieldNames.size(); i++) {
-            createTableSQL.append(fieldNames.get(i)).append(" VARCHAR(").append(fieldLengths.get(i)).append(")");
-            if (i < fieldNames.size() - 1) {
+        for (int i = 0; i < schema.getFieldCount(); i++) {
+            createTableSQL.append(schema.getFieldName(i)).append(" ").append(toSqlType(schema.getFieldType(i), schema.getDeclaredLength(i)));
+            if (i < schema.getFieldCount() - 1) {
                 createTableSQL.append(", ");
             }
         }
@@ -34,56 +39,87 @@ public class MetadataManager {
         try (Statement stmt = connection.createStatement()) {
             stmt.executeUpdate(createTableSQL.toString());
         }
-    }
 
-    public List<String> getFieldNames(String fileName) throws SQLException {
-        List<String> fieldNames = new ArrayList<>();
+        schemas.remove(fileName);
+    }
 
-        DatabaseMetaData metaData = connection.getMetaData();
-        try (ResultSet rs = metaData.getColumns(null, null, fileName, null)) {
-            while (rs.next()) {
-                String columnName = rs.getString("COLUMN_NAME");
-                fieldNames.add(columnName);
-            }
+    // 파일의 스키마. 처음 한 번만 DB 메타데이터를 조회한다. 테이블이 없으면 null
+    @Override
+    public synchronized Schema getSchema(String fileName) throws SQLException {
+        Schema schema = schemas.get(fileName);
+        if (schema != null) {
+            return schema;
         }
 
-        return fieldNames;
-    }
-
-    public List<Integer> getFieldLengths(String fileName) throws SQLException {
+        List<String> fieldNames = new ArrayList<>();
+        List<FieldType> fieldTypes = new ArrayList<>();
         List<Integer> fieldLengths = new ArrayList<>();
 
         DatabaseMetaData metaData = connection.getMetaData();
         try (ResultSet rs = metaData.getColumns(null, null, fileName, null)) {
             while (rs.next()) {
-                int columnSize = rs.getInt("COLUMN_SIZE");
-                fieldLengths.add(columnSize);
+                FieldType type = fromSqlType(rs.getString("TYPE_NAME"), rs.getString("REMARKS"));
+                fieldNames.add(rs.getString("COLUMN_NAME"));
+                fieldTypes.add(type);
+                fieldLengths.add(type == FieldType.DECIMAL ? rs.getInt("DECIMAL_DIGITS") : rs.getInt("COLUMN_SIZE"));
             }
         }
 
-        return fieldLengths;
-    }
+        if (fieldNames.isEmpty()) {
+            return null;
+        }
 
-    public int getFieldIndex(String fileName, String fieldName) throws SQLException {
-        int index = -1;
-        int currentIndex = 0;
+        schema = new Schema(fieldNames, fieldTypes, fieldLengths);
+        schemas.put(fileName, schema);
+        return schema;
+    }
 
-        DatabaseMetaData metaData = connection.getMetaData();
-        try (ResultSet rs = metaData.getColumns(null, null, fileName, null)) {
-            while (rs.next()) {
-                String columnName = rs.getString("COLUMN_NAME");
-                if (columnName.equals(fieldName)) {
-                    index = currentIndex;
-                    break;
-                }
-                currentIndex++;
-            }
+    // CHAR 도 VARCHAR 열로 만들어 왔으므로 가변 길이 VARCHAR 는 열 주석으로 구분한다
+    private static final String VARCHAR_REMARK = "VARCHAR";
+
+    private static String toSqlType(FieldType type, int declaredLength) {
+        switch (type) {
+            case VARCHAR:
+                return "VARCHAR(" + declaredLength + ") COMMENT '" + VARCHAR_REMARK + "'";
+            case INT:
+                return "INT";
+            case BIGINT:
+                return "BIGINT";
+            case DATE:
+                return "DATE";
+            case DECIMAL:
+                return "DECIMAL(18, " + declaredLength + ")";
+            default:
+                return "VARCHAR(" + declaredLength + ")";
         }
+    }
 
-        return index;
+    // 알 수 없는 타입은 문자열로 읽는다
+    private static FieldType fromSqlType(String typeName, String remarks) {
+        if (VARCHAR_REMARK.equals(remarks)) {
+            return FieldType.VARCHAR;
+        }
+        switch (typeName.toUpperCase()) {
+            case "INT":
+            case "INTEGER":
+                return FieldType.INT;
+            case "BIGINT":
+                return FieldType.BIGINT;
+            case "DATE":
+                return FieldType.DATE;
+            case "DECIMAL":
+                return FieldType.DECIMAL;
+            default:
+                return FieldType.CHAR;
+        }
     }
 
-    public boolean fileExists(String fileName) throws SQLException {
+    @Override
+    public synchronized boolean fileExists(String fileName) throws SQLException {
+        if (schemas.containsKey(fileName)) {
+            return true;
+        }
+
         boolean exists = false;
 
         DatabaseMetaData metaData = connection.getMetaData();
@@ -94,6 +130,7 @@ public class MetadataManager {
         return exists;
     }
 
+    @Override
     public void close() {
         if (connection != null) {
             try {
@@ -1,53 +1,99 @@
 package dbms;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.sql.SQLException;
-import java.util.List;
+import java.util.Iterator;
+import java.util.stream.Stream;
 
 public class QueryManager {
     private RecordManager recordManager;
-    private MetadataManager metadataManager;
+    private Catalog catalog;
 
-    public QueryManager(RecordManager recordManager, MetadataManager metadataManager) {
+    public QueryManager(RecordManager recordManager, Catalog catalog) {
         this.recordManager = recordManager;
-        this.metadataManager = metadataManager;
+        this.catalog = catalog;
     }
 
     public void processFieldSearch(String fileName, String fieldName) {
         try {
-            int fieldIndex = metadataManager.getFieldIndex(fileName, fieldName);
+            int fieldIndex = catalog.getFieldIndex(fileName, fieldName);
             if (fieldIndex == -1) {
                 System.out.println("존재하지 않는 필드입니다: " + fieldName);
                 return;
             }
 
-            List<String> results = recordManager.searchField(fileName, fieldName);
-
             System.out.println("파일: " + fileName + ", 필드: " + fieldName);
             System.out.println("검색 결과:");
-            for (int i = 0; i < results.size(); i++) {
-                System.out.println((i + 1) + ". " + (results.get(i) == null ? "null" : results.get(i)));
+
+            // 체인을 읽는 대로 바로 출력한다
+            long count = 0;
+            try (ChainCursor<String> cursor = recordManager.searchField(fileName, fieldName)) {
+                while (cursor.hasNext()) {
+                    String value = cursor.next();
+                    count++;
+                    System.out.println(count + ". " + (value == null ? "null" : value));
+                }
             }
 
-        } catch (IOException | SQLException e) {
+            System.out.println("검색 결과 수: " + count);
+
+        } catch (IOException | UncheckedIOException | SQLException e) {
             System.err.println("필드 검색 중 오류 발생: " + e.getMessage());
         }
     }
 
     public void processRecordSearch(String fileName, String minKey, String maxKey) {
-        try {
-            List<Record> results = recordManager.searchRecords(fileName, minKey, maxKey);
+        processRecordSearch(fileName, minKey, maxKey, 0, Long.MAX_VALUE);
+    }
 
+    // offset 개를 건너뛰고 최대 limit 개까지 출력한다
+    public void processRecordSearch(String fileName, String minKey, String maxKey, long offset, long limit) {
+        try {
             System.out.println("파일: " + fileName + ", 검색 범위: " + minKey + " ~ " + maxKey);
             System.out.println("검색 결과:");
-            for (int i = 0; i < results.size(); i++) {
-                System.out.println((i + 1) + ". " + results.get(i).toString());
+
+            long count = 0;
+            try (ChainCursor<Record> cursor = recordManager.searchRecords(fileName, minKey, maxKey)) {
+                cursor.offset(offset).limit(limit);
+                while (cursor.hasNext()) {
+                    Record record = cursor.next();
+                    count++;
+                    System.out.println((offset + count) + ". " + record.toString());
+                }
+            }
+
+            System.out.println("총 " + count + "개의 레코드가 검색되었습니다.");
+
+        } catch (IllegalArgumentException e) {
+            System.err.println("잘못된 검색 조건입니다: " + e.getMessage());
+        } catch (IOException | UncheckedIOException | SQLException e) {
+            System.err.println("레코드 검색 중 오류 발생: " + e.getMessage());
+        }
+    }
+
+    // fieldName = value 인 레코드를 출력한다. 인덱스가 있으면 그 필드의 인덱스를 쓴다
+    public void processEqualitySearch(String fileName, String fieldName, String value) {
+        try {
+            System.out.println("파일: " + fileName + ", 검색 조건: " + fieldName + " = " + value);
+            System.out.println("검색 결과:");
+
+            long count = 0;
+            try (Stream<Record> records = recordManager.searchEqual(fileName, fieldName, value)) {
+                Iterator<Record> iterator = records.iterator();
+                while (iterator.hasNext()) {
+                    Record record = iterator.next();
+                    count++;
+                    System.out.println(count + ". " + record.toString());
+                }
             }
 
-            System.out.println("총 " + results.size() + "개의 레코드가 검색되었습니다.");
+            System.out.println("총 " + count + "개의 레코드가 검색되었습니다.");
 
-        } catch (IOException | SQLException e) {
+        } catch (IllegalArgumentException e) {
+            System.err.println("잘못된 검색 조건입니다: " + e.getMessage());
+        } catch (IOException | UncheckedIOException | SQLException e) {
             System.err.println("레코드 검색 중 오류 발생: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
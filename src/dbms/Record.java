@@ -2,22 +2,23 @@ package dbms;
 
 import dbms.util.ByteUtils;
 import dbms.util.Constants;
+import dbms.util.RecordPointer;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class Record {
     private byte nullBitmap;
     private List<String> fieldValues;
-    private List<Integer> fieldLengths;
-    private List<String> fieldNames;
-    private int nextPointer; // 다음 레코드를 가리키는 포인터
+    private Schema schema;
+    private RecordPointer nextPointer; // 다음 레코드를 가리키는 포인터 (없으면 null)
 
-    public Record(List<String> fieldValues, List<Integer> fieldLengths, List<String> fieldNames) {
+    public Record(List<String> fieldValues, Schema schema) {
         this.fieldValues = fieldValues;
-        this.fieldLengths = fieldLengths;
-        this.fieldNames = fieldNames;
-        this.nextPointer = -1;
+        this.schema = schema;
+        this.nextPointer = null;
 
         boolean[] isNull = new boolean[fieldValues.size()];
         for (int i = 0; i < fieldValues.size(); i++) {
@@ -26,6 +27,14 @@ public class Record {
         this.nullBitmap = ByteUtils.createNullBitmap(isNull);
     }
 
+    // 페이지에서 읽은 레코드. 비트맵을 다시 계산하지 않는다
+    Record(List<String> fieldValues, Schema schema, byte nullBitmap, RecordPointer nextPointer) {
+        this.fieldValues = fieldValues;
+        this.schema = schema;
+        this.nullBitmap = nullBitmap;
+        this.nextPointer = nextPointer;
+    }
+
     public byte[] toBytes() {
 
         boolean[] isNull = new boolean[fieldValues.size()];
@@ -34,71 +43,46 @@ public class Record {
         }
         byte nullBitmap = ByteUtils.createNullBitmap(isNull);
 
-        int totalSize = Constants.NULL_BITMAP_SIZE;
-        for (int i = 0; i < fieldValues.size(); i++) {
-            if (!isNull[i]) {
-                totalSize += fieldLengths.get(i);
-            }
-        }
-        totalSize += Constants.POINTER_SIZE;
-
-        byte[] bytes = new byte[totalSize];
+        // 가변 길이 필드의 실제 길이는 써 봐야 알 수 있으므로 최대 크기로 만든 뒤 줄인다
+        byte[] bytes = new byte[schema.getMaxRecordSize()];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
 
         bytes[0] = nullBitmap;
 
         int currentPos = Constants.NULL_BITMAP_SIZE;
 
+        // 필드 타입에 맞는 바이너리로 쓴다. 값 형식이 틀리면 IllegalArgumentException
         for (int i = 0; i < fieldValues.size(); i++) {
             if (!isNull[i]) {
-                byte[] fieldBytes = ByteUtils.stringToBytes(fieldValues.get(i), fieldLengths.get(i));
-                System.arraycopy(fieldBytes, 0, bytes, currentPos, fieldLengths.get(i));
-                currentPos += fieldLengths.get(i);
+                currentPos += schema.writeField(buffer, currentPos, i, fieldValues.get(i));
             }
         }
 
-        byte[] pointerBytes = ByteUtils.fileOffsetToPointerBytes(nextPointer);
-        System.arraycopy(pointerBytes, 0, bytes, currentPos, Constants.POINTER_SIZE);
+        ByteUtils.writePointer(buffer, currentPos, nextPointer);
 
-        return bytes;
+        int totalSize = currentPos + Constants.POINTER_SIZE;
+        return totalSize == bytes.length ? bytes : Arrays.copyOf(bytes, totalSize);
+    }
+    public static Record fromBytes(byte[] data, Schema schema) {
+        return fromBuffer(ByteBuffer.wrap(data), 0, data.length, schema);
     }
-    public static Record fromBytes(byte[] data, List<Integer> fieldLengths, List<String> fieldNames) {
-        if (data.length < Constants.NULL_BITMAP_SIZE + Constants.POINTER_SIZE) {
-            System.err.println("데이터 길이가 너무 짧습니다: " + data.length);
-            return null;
-        }
-
-        byte nullBitmap = data[0];
-
-        List<String> fieldValues = new ArrayList<>();
-        int currentPos = Constants.NULL_BITMAP_SIZE;
 
-        for (int i = 0; i < fieldLengths.size(); i++) {
-            boolean isNull = ByteUtils.isFieldNull(nullBitmap, i);
-            if (isNull) {
-                fieldValues.add(null);
-            } else {
-                String value = ByteUtils.bytesToString(data, currentPos, fieldLengths.get(i));
-                fieldValues.add(value);
-                currentPos += fieldLengths.get(i);
-            }
+    // 버퍼(페이지 또는 매핑된 영역)의 offset 위치에서 바로 레코드를 해석한다
+    public static Record fromBuffer(ByteBuffer data, int offset, int length, Schema schema) {
+        if (length < Constants.NULL_BITMAP_SIZE + Constants.POINTER_SIZE) {
+            System.err.println("데이터 길이가 너무 짧습니다: " + length);
+            return null;
         }
 
-        byte[] pointerBytes = new byte[Constants.POINTER_SIZE];
-        System.arraycopy(data, data.length - Constants.POINTER_SIZE, pointerBytes, 0, Constants.POINTER_SIZE);
-        int nextPointer = ByteUtils.pointerBytesToFileOffset(pointerBytes);
-
-        Record record = new Record(fieldValues, fieldLengths, fieldNames);
-        record.setNextPointer(nextPointer);
-
-        return record;
+        return new RecordView(schema).reset(data, offset, length).toRecord();
     }
 
     public int calculateRecordSize() {
         int size = Constants.NULL_BITMAP_SIZE;
 
-        for (int i = 0; i < fieldNames.size(); i++) {
+        for (int i = 0; i < schema.getFieldCount(); i++) {
             if (fieldValues.get(i) != null) {
-                size += fieldLengths.get(i);
+                size += schema.encodedFieldLength(i, fieldValues.get(i));
             }
         }
         size += Constants.POINTER_SIZE;
@@ -107,34 +91,47 @@ public class Record {
     }
 
     public String getFieldValue(String fieldName) {
-        int index = fieldNames.indexOf(fieldName);
+        int index = schema.getFieldIndex(fieldName);
         if (index != -1) {
             return fieldValues.get(index);
         }
         return null;
     }
 
+    public String getFieldValue(int index) {
+        return fieldValues.get(index);
+    }
+
+    public int getFieldCount() {
+        return fieldValues.size();
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < fieldNames.size(); i++) {
-            sb.append(fieldNames.get(i)).append(": ").append(fieldValues.get(i));
-            if (i < fieldNames.size() - 1) {
+        for (int i = 0; i < schema.getFieldCount(); i++) {
+            sb.append(schema.getFieldName(i)).append(": ").append(fieldValues.get(i));
+            if (i < schema.getFieldCount() - 1) {
                 sb.append(", ");
             }
         }
         return sb.toString();
     }
 
-    public int getNextPointer() {
+    public RecordPointer getNextPointer() {
         return nextPointer;
     }
 
-    public void setNextPointer(int nextPointer) {
+    public void setNextPointer(RecordPointer nextPointer) {
         this.nextPointer = nextPointer;
     }
 
     public String getSearchKey() {
         return fieldValues.get(0);
     }
+
+    // 파일에 저장되는 형태의 검색 키 바이트 (Schema.encodeSearchKey). null 키면 null
+    public byte[] getSearchKeyBytes() {
+        return schema.encodeSearchKey(getSearchKey());
+    }
 }
\ No newline at end of file
@@ -1,390 +1,923 @@
 package dbms;
 
+import dbms.index.BPlusTreeIndex;
+import dbms.index.FenceIndex;
+import dbms.index.HashIndex;
+import dbms.storage.FreeSpaceMap;
+import dbms.storage.Page;
+import dbms.storage.SlottedPage;
+import dbms.util.ByteUtils;
 import dbms.util.Constants;
 import dbms.util.RecordPointer;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.sql.SQLException;
 import java.util.*;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+// 여러 스레드가 함께 쓸 수 있다. 파일마다 읽기/쓰기 락을 두어 삽입은 읽기 락을,
+// 레코드를 제자리에서 지우거나 옮기는 일(삭제, 수정, 인덱스 생성, 파일 재생성)은 쓰기 락을 잡는다
+// 삽입끼리는 파일마다 한 스레드씩 하고, 일괄 적재와 재구성은 읽기 락과 삽입 락을 잡고 파일의 다음 세대를 새로 쓴 뒤 바꿔 넣는다
+// 검색은 파일 락을 잡지 않는다. 시작할 때의 세대를 스냅숏으로 잡고 페이지마다 블록 래치로만 다른 작업과 조율하므로
+// 어떤 작업도 기다리지도, 막지도 않는다. 지운 레코드는 그 전에 연 검색이 모두 닫힌 뒤에 회수한다
+// 삽입, 삭제, 수정은 트랜잭션 하나로 로그에 남기고, 락을 푼 뒤에 로그가 디스크에 내려가기를 기다린다
 public class RecordManager {
+    // 정렬 삽입을 이만큼 할 때마다 클러스터링 계수를 확인한다
+    private static final int CLUSTERING_CHECK_INTERVAL = 1000;
+    // 새 레코드를 키 순서상 이웃한 레코드와 이 거리(블록 수) 안에 두려고 먼저 찾아본다
+    private static final int NEAR_BLOCK_WINDOW = 8;
+
     private DiskFileManager diskFileManager;
-    private MetadataManager metadataManager;
+    private Catalog catalog;
+    private long bulkLoadMemory; // 일괄 적재 시 메모리에서 정렬할 최대 크기 (바이트)
+    private double reorganizeThreshold; // 클러스터링 계수가 이 값을 넘으면 자동으로 재구성한다 (0 이하면 하지 않음)
+    private int loadThreads = Runtime.getRuntime().availableProcessors(); // 일괄 적재 입력을 파싱할 스레드 수
+    private Map<String, Integer> insertsSinceCheck = new ConcurrentHashMap<>();
+    private final Map<String, ReadWriteLock> fileLocks = new ConcurrentHashMap<>();
+    private final Map<String, Lock> insertLocks = new ConcurrentHashMap<>();
+
+    public RecordManager(DiskFileManager diskFileManager, Catalog catalog) {
+        this(diskFileManager, catalog, Constants.BULK_LOAD_MEMORY);
+    }
 
-    public RecordManager(DiskFileManager diskFileManager, MetadataManager metadataManager) {
+    public RecordManager(DiskFileManager diskFileManager, Catalog catalog, long bulkLoadMemory) {
         this.diskFileManager = diskFileManager;
-        this.metadataManager = metadataManager;
+        this.catalog = catalog;
+        this.bulkLoadMemory = bulkLoadMemory;
+    }
+
+    public void setReorganizeThreshold(double reorganizeThreshold) {
+        this.reorganizeThreshold = reorganizeThreshold;
+    }
+
+    public void setLoadThreads(int loadThreads) {
+        this.loadThreads = loadThreads;
     }
 
     public void bulkInsertRecords(String fileName, String dataFilePath) throws IOException, SQLException {
+        // 다음 세대에 적재하는 동안 검색은 현재 세대를 계속 읽고, 삽입, 삭제, 수정만 기다린다
+        Lock fileLock = getFileLock(fileName).readLock();
+        Lock insertLock = getInsertLock(fileName);
+        fileLock.lock();
+        try {
+            insertLock.lock();
+            try {
+                Schema schema = diskFileManager.getSchema(fileName);
+                if (schema == null) {
+                    System.err.println("파일이 존재하지 않습니다: " + fileName);
+                    throw new IllegalArgumentException("파일이 존재하지 않습니다: " + fileName);
+                }
+                String target = createGeneration(fileName, diskFileManager.getCurrentFileName(fileName), schema);
+                try {
+                    bulkLoad(target, schema, dataFilePath);
+                } catch (IOException | RuntimeException e) {
+                    diskFileManager.deleteFile(target);
+                    throw e;
+                }
+                diskFileManager.switchGeneration(fileName, target);
+                insertsSinceCheck.remove(fileName);
+            } finally {
+                insertLock.unlock();
+            }
+        } finally {
+            fileLock.unlock();
+        }
+    }
 
-        if (!metadataManager.fileExists(fileName)) {
-            System.err.println("파일이 존재하지 않습니다: " + fileName);
-            throw new IllegalArgumentException("파일이 존재하지 않습니다: " + fileName);
+    // CREATE: 빈 파일을 만들고 카탈로그에 스키마를 기록한다. 이미 있는 파일이면 빈 다음 세대로 바꿔 넣는다
+    // 쓰기 락과 삽입 락을 잡아 삽입, 삭제, 수정, 적재와 겹치지 않게 하고, 열려 있던 검색은 이전 세대를 끝까지 읽는다
+    // 카탈로그 기록이나 세대 교체가 실패하면 새 세대를 지우고 카탈로그를 되돌려 파일과 카탈로그가 함께 이전 상태로 남는다
+    public void createTable(String fileName, Schema schema, int pageSize) throws IOException, SQLException {
+        Lock fileLock = getFileLock(fileName).writeLock();
+        Lock insertLock = getInsertLock(fileName);
+        fileLock.lock();
+        try {
+            insertLock.lock();
+            try {
+                Schema previous = catalog.getSchema(fileName);
+                String target = diskFileManager.createNextGeneration(fileName, schema, pageSize);
+                try {
+                    catalog.createTable(fileName, schema);
+                } catch (IOException | SQLException | RuntimeException e) {
+                    diskFileManager.deleteFile(target);
+                    throw e;
+                }
+                try {
+                    diskFileManager.switchGeneration(fileName, target, schema);
+                } catch (IOException | RuntimeException e) {
+                    diskFileManager.deleteFile(target);
+                    restoreCatalog(fileName, previous, e);
+                    throw e;
+                }
+                insertsSinceCheck.remove(fileName);
+            } finally {
+                insertLock.unlock();
+            }
+        } finally {
+            fileLock.unlock();
         }
+    }
 
-        List<String> fieldNames = metadataManager.getFieldNames(fileName);
-        List<Integer> fieldLengths = metadataManager.getFieldLengths(fileName);
+    private void restoreCatalog(String fileName, Schema previous, Exception cause) {
+        if (previous == null) {
+            return;
+        }
+        try {
+            catalog.createTable(fileName, previous);
+        } catch (IOException | SQLException | RuntimeException e) {
+            cause.addSuppressed(e);
+        }
+    }
 
-        resetFile(fileName);
+    // 현재 세대(current)와 페이지 크기, 인덱스가 같은 빈 다음 세대를 만들고 그 데이터 파일 이름을 돌려준다
+    private String createGeneration(String fileName, String current, Schema schema) throws IOException {
+        String target = diskFileManager.nextGenerationFileName(fileName);
+        diskFileManager.createDataFile(target, diskFileManager.getPageSize(current));
+        if (diskFileManager.getIndex(current) != null) {
+            diskFileManager.createIndex(target, schema.getSearchKeyLength());
+        }
+        HashIndex[] hashIndexes = diskFileManager.getHashIndexes(current, schema);
+        for (int i = 0; i < hashIndexes.length; i++) {
+            if (hashIndexes[i] != null) {
+                diskFileManager.createHashIndex(target, schema, i);
+            }
+        }
+        return target;
+    }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(dataFilePath))) {
-            String fileNameLine = reader.readLine();
-            String recordCountLine = reader.readLine();
+    private void bulkLoad(String fileName, Schema schema, String dataFilePath) throws IOException {
+        // 레코드마다 체인을 따라가며 정렬 삽입하지 않고, 전부 정렬한 뒤 키 순서대로 한 번에 쓴다
+        // 입력 파일은 여러 스레드가 나눠 파싱하고, 이 스레드는 입력 순서대로 받아 적재만 한다
+        try (BulkLoader loader = new BulkLoader(diskFileManager, fileName, bulkLoadMemory)) {
+            int skipped = new BulkInputParser(dataFilePath, schema, loadThreads).parseInto(loader);
+
+            int count = loader.finish();
+            rebuildHashIndexes(fileName, schema);
+            System.out.println(count + "개의 레코드를 적재했습니다.");
+            if (skipped > 0) {
+                System.out.println(skipped + "개의 레코드를 건너뛰었습니다.");
+            }
 
-            byte[] headerBlock = new byte[Constants.BLOCK_SIZE];
-            Arrays.fill(headerBlock, 0, Constants.POINTER_SIZE, (byte) 0xFF); // 첫 레코드 포인터 -1로 설정
-            diskFileManager.writeBlockData(fileName, 0, headerBlock);
+        } catch (IOException e) {
+            System.err.println("파일 읽기 오류: " + e.getMessage());
+            throw e;
+        }
+    }
 
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.trim().isEmpty()) continue;
+    // 구분자로 나뉜 한 줄을 필드 값 목록으로 바꾼다. "null" 은 null 로, 모자란 필드는 null 로 채운다
+    public static List<String> parseValues(String line, Schema schema) {
+        String[] values = line.split(Constants.DELIMITER);
+        List<String> fieldValues = new ArrayList<>();
 
-                String[] values = line.split(Constants.DELIMITER);
-                List<String> fieldValues = new ArrayList<>();
+        for (int i = 0; i < values.length; i++) {
+            String value = values[i].trim();
+            if (Constants.NULL_VALUE.equalsIgnoreCase(value)) {
+                fieldValues.add(null);
+            } else {
+                fieldValues.add(value);
+            }
+        }
 
-                for (int i = 0; i < values.length; i++) {
-                    String value = values[i].trim();
-                    if (Constants.NULL_VALUE.equalsIgnoreCase(value)) {
-                        fieldValues.add(null);
-                    } else {
-                        fieldValues.add(value);
-                    }
-                }
+        while (fieldValues.size() < schema.getFieldCount()) {
+            fieldValues.add(null);
+        }
+        return fieldValues;
+    }
 
-                while (fieldValues.size() < fieldNames.size()) {
-                    fieldValues.add(null);
+    // 레코드 하나를 키 순서 위치에 넣고 그 위치를 돌려준다. 값 형식이 틀리면 IllegalArgumentException
+    public RecordPointer insert(String fileName, Record record) throws IOException, SQLException {
+        Lock fileLock = getFileLock(fileName).readLock();
+        Lock insertLock = getInsertLock(fileName);
+        RecordPointer pointer;
+        long commitLsn;
+        fileLock.lock();
+        try {
+            insertLock.lock();
+            try {
+                Schema schema = getSchema(fileName);
+                checkFieldCount(schema, record.getFieldCount());
+                String dataFileName = diskFileManager.getCurrentFileName(fileName);
+                diskFileManager.beginTransaction();
+                try {
+                    diskFileManager.reclaimDeleted(dataFileName);
+                    pointer = insertRecordSorted(dataFileName, schema, record);
+                } finally {
+                    commitLsn = diskFileManager.commitTransaction();
                 }
+            } finally {
+                insertLock.unlock();
+            }
+        } finally {
+            fileLock.unlock();
+        }
 
-                Record record = new Record(fieldValues, fieldLengths, fieldNames);
+        // 다른 스레드의 삽입이 기다리지 않고 같은 fsync 에 묶이도록 락을 푼 뒤에 기다린다
+        diskFileManager.awaitDurable(commitLsn);
 
-                insertRecordSorted(fileName, record);
-            }
+        // 재구성은 삽입 락을 오래 잡으므로 락을 모두 푼 뒤에 확인한다
+        reorganizeIfScattered(fileName);
+        return pointer;
+    }
 
-        } catch (IOException e) {
-            System.err.println("파일 읽기 오류: " + e.getMessage());
-            throw e;
-        }
+    private ReadWriteLock getFileLock(String fileName) {
+        return fileLocks.computeIfAbsent(fileName, name -> new ReentrantReadWriteLock());
     }
 
-    private void insertRecordSorted(String fileName, Record newRecord) throws IOException, SQLException {
+    // 삽입과 일괄 적재, 재구성을 파일마다 한 스레드씩 하게 한다. 파일의 읽기 락을 잡은 뒤에 잡는다
+    private Lock getInsertLock(String fileName) {
+        return insertLocks.computeIfAbsent(fileName, name -> new ReentrantLock());
+    }
 
-        int firstRecordOffset = diskFileManager.getFirstRecordPointer(fileName);
-        RecordPointer firstRecordPointer = diskFileManager.offsetToPointer(firstRecordOffset);
+    // 파일 락을 잡은 뒤 부른다. 그 사이 파일을 다시 만들었어도 지금 고칠 세대의 스키마를 쓴다
+    private Schema getSchema(String fileName) throws IOException, SQLException {
+        Schema schema = diskFileManager.getSchema(fileName);
+        if (schema == null) {
+            throw new IllegalArgumentException("파일이 존재하지 않습니다: " + fileName);
+        }
+        return schema;
+    }
 
-//        System.out.println("첫 레코드 포인터: " +
-//                (firstRecordPointer != null ?
-//                        "블록=" + firstRecordPointer.getBlockNumber() +
-//                                ", 오프셋=" + firstRecordPointer.getOffsetInBlock() : "없음(-1)"));
+    // 검색 키가 key 인 레코드를 모두 지우고 지운 수를 돌려준다
+    // 체인에서 떼어 낸 뒤, 그 전에 연 검색이 모두 닫히면 슬롯을 툼스톤으로 바꾸고 비운 공간을 여유 공간 맵에 돌려준다
+    public int delete(String fileName, String key) throws IOException, SQLException {
+        return modifyRecords(fileName, key, null);
+    }
 
-        String newKey = newRecord.getSearchKey();
+    // 검색 키가 key 인 레코드의 필드 값을 모두 values 로 바꾸고 바꾼 수를 돌려준다
+    // 검색 키가 그대로이고 새 값이 같은 페이지에 들어가면(크기가 같으면 항상) 제자리에서 덮어쓰므로 포인터와 인덱스가 바뀌지 않는다
+    // 검색 키가 바뀌었거나 페이지에 자리가 없으면 지운 뒤 정렬 위치에 다시 넣는다
+    public int update(String fileName, String key, List<String> values) throws IOException, SQLException {
+        return modifyRecords(fileName, key, new ArrayList<>(values));
+    }
 
-        RecordPointer currentPointer = firstRecordPointer;
-        Record currentRecord = null;
+    private void checkFieldCount(Schema schema, int fieldCount) {
+        if (fieldCount != schema.getFieldCount()) {
+            throw new IllegalArgumentException("필드 수가 맞지 않습니다: " + fieldCount + " (스키마 " + schema.getFieldCount() + "개)");
+        }
+    }
 
-        if (currentPointer != null) {
-            boolean insertAtBeginning = false;
+    private byte[] encodeExactKey(Schema schema, String key) {
+        byte[] keyBytes = schema.encodeSearchKey(key);
+        if (keyBytes == null) {
+            throw new IllegalArgumentException("검색 키 값을 입력해야 합니다.");
+        }
+        return keyBytes;
+    }
 
-            Record firstRecord = diskFileManager.readRecord(fileName, currentPointer);
+    // 파일의 쓰기 락을 잡고 트랜잭션 안에서 고친다
+    private int modifyRecords(String fileName, String key, List<String> values) throws IOException, SQLException {
+        int count;
+        long commitLsn;
+        Lock lock = getFileLock(fileName).writeLock();
+        lock.lock();
+        try {
+            Schema schema = getSchema(fileName);
+            String dataFileName = diskFileManager.getCurrentFileName(fileName);
+            byte[] keyBytes = encodeExactKey(schema, key);
+
+            // 값 형식과 크기를 먼저 검사해 레코드를 지운 뒤에 실패하지 않게 한다
+            if (values != null) {
+                checkFieldCount(schema, values.size());
+                int pageSize = diskFileManager.getPageSize(dataFileName);
+                int length = new Record(values, schema).toBytes().length;
+                if (length > SlottedPage.getMaxRecordSize(pageSize)) {
+                    throw new IllegalArgumentException("레코드가 페이지 크기보다 큽니다: " + length
+                            + "바이트 (페이지 " + pageSize + "바이트)");
+                }
+            }
 
-            if (firstRecord == null) {
-                insertAtBeginning = true;
+            diskFileManager.beginTransaction();
+            try {
+                count = modifyChain(dataFileName, schema, keyBytes, values);
+                diskFileManager.reclaimDeleted(dataFileName);
+            } finally {
+                commitLsn = diskFileManager.commitTransaction();
             }
-            else if (newKey.compareTo(firstRecord.getSearchKey()) < 0) {
-                insertAtBeginning = true;
-            } else {
-                currentRecord = firstRecord;
+        } finally {
+            lock.unlock();
+        }
 
-                while (currentRecord != null) {
-                    int nextOffset = currentRecord.getNextPointer();
+        diskFileManager.awaitDurable(commitLsn);
+        return count;
+    }
 
-                    if (nextOffset < 0) {
-                        break;
-                    }
+    // 키가 keyBytes 인 레코드들을 체인 순서대로 지우거나(values 가 null) values 로 바꾼다
+    private int modifyChain(String fileName, Schema schema, byte[] keyBytes, List<String> values)
+            throws IOException, SQLException {
+        Record replacement = values != null ? new Record(values, schema) : null;
+        diskFileManager.invalidateFenceIndex(fileName);
+        RecordPointer firstRecordPointer = diskFileManager.getFirstRecordPointer(fileName);
+        BPlusTreeIndex index = diskFileManager.getIndex(fileName);
+        HashIndex[] hashIndexes = diskFileManager.getHashIndexes(fileName, schema);
+        byte[][] oldFieldKeys = new byte[hashIndexes.length][];
+        FreeSpaceMap freeSpaceMap = diskFileManager.getFreeSpaceMap(fileName);
+        boolean sameKey = replacement != null && Arrays.equals(replacement.getSearchKeyBytes(), keyBytes);
+
+        // key 보다 작은 마지막 레코드 (없으면 key 인 레코드가 체인 맨 앞에 있다)
+        RecordPointer previous = null;
+        if (index != null) {
+            previous = index.lower(keyBytes);
+        } else if (firstRecordPointer != null) {
+            previous = findPredecessor(fileName, schema, firstRecordPointer, keyBytes, false);
+        }
 
-                    RecordPointer nextPointer = diskFileManager.offsetToPointer(nextOffset);
-                    if (nextPointer == null) {
+        RecordView view = new RecordView(schema);
+        RecordPointer current = previous != null ? diskFileManager.readNextPointer(fileName, previous) : firstRecordPointer;
+        int count = 0;
+        int moved = 0;
+
+        while (current != null) {
+            int blockNumber = current.getBlockNumber();
+            int slot = current.getSlotNumber();
+            RecordPointer next;
+            boolean removed = false;
+            boolean dirty = false;
+
+            // 같은 블록을 읽고 있는 검색과 겹치지 않도록 블록의 쓰기 래치를 잡는다
+            Lock latch = diskFileManager.getBlockLatch(fileName, blockNumber).writeLock();
+            latch.lock();
+            try {
+                Page page = diskFileManager.pinBlock(fileName, blockNumber);
+                try {
+                    ByteBuffer buf = page.getBuffer();
+                    if (!SlottedPage.isLive(buf, slot)) {
                         break;
                     }
-
-                    Record nextRecord = diskFileManager.readRecord(fileName, nextPointer);
-                    if (nextRecord == null) {
+                    view.reset(buf, SlottedPage.getRecordOffset(buf, slot), SlottedPage.getRecordLength(buf, slot));
+                    if (view.compareKey(keyBytes) != 0) {
                         break;
                     }
-
-                    if (nextRecord.getSearchKey().compareTo(newKey) > 0) {
-                        break;
+                    next = view.nextPointer();
+                    for (int i = 0; i < hashIndexes.length; i++) {
+                        if (hashIndexes[i] != null) {
+                            oldFieldKeys[i] = view.keyBytes(i);
+                        }
                     }
 
-                    currentPointer = nextPointer;
-                    currentRecord = nextRecord;
+                    if (sameKey) {
+                        replacement.setNextPointer(next);
+                        removed = !SlottedPage.update(buf, slot, replacement.toBytes());
+                    } else {
+                        removed = true;
+                    }
+                    if (removed) {
+                        // 이 레코드를 읽고 있을 수 있는 검색이 다음 포인터를 따라가도록 바이트는 남긴다
+                        SlottedPage.markDeleted(buf, slot);
+                    }
+                    dirty = true;
+                    freeSpaceMap.update(blockNumber, SlottedPage.getFreeSpace(buf));
+                } finally {
+                    diskFileManager.unpinBlock(page, dirty);
                 }
+            } finally {
+                latch.unlock();
             }
-            RecordPointer newRecordPointer = calculateNewRecordPosition(fileName, newRecord);
-
-            if (insertAtBeginning) {
-                newRecord.setNextPointer(diskFileManager.pointerToOffset(firstRecordPointer));
 
-                byte[] headerBlock = diskFileManager.readBlockData(fileName, 0);
-                updatePointerInBlock(headerBlock, 0, newRecordPointer);
-                diskFileManager.writeBlockData(fileName, 0, headerBlock);
+            if (removed) {
+                if (previous == null) {
+                    diskFileManager.updateFirstRecordPointer(fileName, next);
+                } else {
+                    diskFileManager.updateNextPointer(fileName, previous, next);
+                }
+                if (index != null) {
+                    index.delete(keyBytes, current);
+                }
+                if (replacement != null) {
+                    moved++;
+                }
             } else {
-                newRecord.setNextPointer(currentRecord.getNextPointer());
-                currentRecord.setNextPointer(diskFileManager.pointerToOffset(newRecordPointer));
+                previous = current;
+            }
 
-                saveRecord(fileName, currentRecord, currentPointer);
+            // 보조 인덱스는 이전 값의 엔트리를 지우고, 제자리에서 바뀐 레코드는 새 값으로 다시 넣는다
+            for (int i = 0; i < hashIndexes.length; i++) {
+                if (hashIndexes[i] == null) {
+                    continue;
+                }
+                if (oldFieldKeys[i] != null) {
+                    hashIndexes[i].delete(oldFieldKeys[i], current);
+                }
+                byte[] newFieldKey = removed ? null : schema.encodeKey(i, values.get(i));
+                if (newFieldKey != null) {
+                    hashIndexes[i].insert(newFieldKey, current);
+                }
+            }
+            if (removed) {
+                // 체인과 인덱스에서 모두 뗐으므로 이제 여는 검색은 이 레코드에 닿지 않는다
+                diskFileManager.markDeleted(fileName, blockNumber);
             }
+            count++;
+            diskFileManager.commitIfLarge();
 
-            saveRecord(fileName, newRecord, newRecordPointer);
+            // 자기 자신을 가리키는 체인은 끝으로 본다
+            current = current.equals(next) ? null : next;
+        }
 
-        } else {
-            RecordPointer newRecordPointer = calculateNewRecordPosition(fileName, newRecord);
-            newRecord.setNextPointer(-1);
+        // 옮겨야 하는 레코드는 체인에서 모두 뗀 뒤 새 키 순서 위치에 넣는다
+        for (int i = 0; i < moved; i++) {
+            insertRecordSorted(fileName, schema, new Record(values, schema));
+            diskFileManager.commitIfLarge();
+        }
+        return count;
+    }
 
-            byte[] headerBlock = diskFileManager.readBlockData(fileName, 0);
-            updatePointerInBlock(headerBlock, 0, newRecordPointer);
-            diskFileManager.writeBlockData(fileName, 0, headerBlock);
+    private RecordPointer insertRecordSorted(String fileName, Schema schema, Record newRecord) throws IOException, SQLException {
+        // 새 레코드가 빈자리 블록에 들어가면 체인 순서와 블록 순서가 어긋난다
+        diskFileManager.invalidateFenceIndex(fileName);
 
-            saveRecord(fileName, newRecord, newRecordPointer);
-        }
+        RecordPointer firstRecordPointer = diskFileManager.getFirstRecordPointer(fileName);
 
-        //printRecordChain(fileName); //디버깅 코드
-    }
-    private void updatePointerInBlock(byte[] blockData, int offset, RecordPointer pointer) {
-        int blockNumber = pointer.getBlockNumber();
-        int offsetInBlock = pointer.getOffsetInBlock();
+//        System.out.println("첫 레코드 포인터: " + (firstRecordPointer != null ? firstRecordPointer : "없음(-1)"));
 
-        // 블록 번호 (4바이트)
-        blockData[offset] = (byte)((blockNumber >> 24) & 0xFF);
-        blockData[offset + 1] = (byte)((blockNumber >> 16) & 0xFF);
-        blockData[offset + 2] = (byte)((blockNumber >> 8) & 0xFF);
-        blockData[offset + 3] = (byte)(blockNumber & 0xFF);
+        byte[] newKey = newRecord.getSearchKeyBytes();
 
-        // 오프셋 (2바이트)
-        blockData[offset + 4] = (byte)((offsetInBlock >> 8) & 0xFF);
-        blockData[offset + 5] = (byte)(offsetInBlock & 0xFF);
-    }
+        // 새 레코드 바로 앞에 올 레코드 (없으면 맨 앞에 삽입)
+        RecordPointer predecessor = null;
 
-    private RecordPointer calculateNewRecordPosition(String fileName, Record record) throws IOException {
-        int nextPosition = diskFileManager.getNextAvailablePosition(fileName);
-        int blockNumber = nextPosition / Constants.BLOCK_SIZE;
-        int blockOffset = nextPosition % Constants.BLOCK_SIZE;
+        BPlusTreeIndex index = diskFileManager.getIndex(fileName);
+        if (index != null) {
+            // 인덱스로 키 이하인 마지막 레코드를 바로 찾는다
+            predecessor = index.floor(newKey);
+        } else if (firstRecordPointer != null && newKey != null) {
+            predecessor = findPredecessor(fileName, schema, firstRecordPointer, newKey, true);
+        }
 
-        // 현재 레코드 실제 크기 계산
-        int recordSize = record.calculateRecordSize();
+        RecordPointer newRecordPointer;
+        if (predecessor == null) {
+            newRecord.setNextPointer(firstRecordPointer);
+            newRecordPointer = storeRecord(fileName, newRecord, firstRecordPointer);
 
-        // 블록 내 남은 공간 계산
-        int freeSpace = Constants.BLOCK_SIZE - blockOffset;
+            diskFileManager.updateFirstRecordPointer(fileName, newRecordPointer);
+        } else {
+            // 앞 레코드는 해석하지 않고 다음 포인터만 읽고 바꾼다
+            newRecord.setNextPointer(diskFileManager.readNextPointer(fileName, predecessor));
+            newRecordPointer = storeRecord(fileName, newRecord, predecessor);
 
-        if (freeSpace < recordSize) {
-            blockNumber++;
-            blockOffset = 0;
+            diskFileManager.updateNextPointer(fileName, predecessor, newRecordPointer);
         }
 
-        return new RecordPointer(blockNumber, blockOffset);
-    }
-    private void saveRecord(String fileName, Record record, RecordPointer pointer) throws IOException {
-        int blockNumber = pointer.getBlockNumber();
-        int blockOffset = pointer.getOffsetInBlock();
+        if (index != null) {
+            index.insert(newKey, newRecordPointer);
+        }
 
-        byte[] recordBytes = record.toBytes();
-        int recordSize = recordBytes.length;
+        HashIndex[] hashIndexes = diskFileManager.getHashIndexes(fileName, schema);
+        for (int i = 0; i < hashIndexes.length; i++) {
+            byte[] fieldKey = hashIndexes[i] != null ? schema.encodeKey(i, newRecord.getFieldValue(i)) : null;
+            if (fieldKey != null) {
+                hashIndexes[i].insert(fieldKey, newRecordPointer);
+            }
+        }
 
-        int pointerOffset = recordBytes.length - Constants.POINTER_SIZE;
-        StringBuilder nextPointerBytes = new StringBuilder("[");
-        for (int i = 0; i < Constants.POINTER_SIZE; i++) {
-            nextPointerBytes.append(String.format("%02X", recordBytes[pointerOffset + i] & 0xFF));
-            if (i < Constants.POINTER_SIZE - 1) {
-                nextPointerBytes.append(" ");
+        //printRecordChain(fileName); //디버깅 코드
+        return newRecordPointer;
+    }
+
+    // 인덱스가 없을 때 체인을 따라가며 키가 key 이하(inclusive 가 false 면 미만)인 마지막 레코드를 찾는다. 없으면 null
+    // 레코드를 만들지 않고 페이지 위에서 키와 다음 포인터만 본다
+    private RecordPointer findPredecessor(String fileName, Schema schema, RecordPointer firstPointer, byte[] key,
+                                          boolean inclusive) throws IOException {
+        RecordView view = new RecordView(schema);
+        int[] next = new int[2];
+        DiskFileManager.SlotReader<Boolean> reader = (page, offset, length) -> {
+            view.reset(page, offset, length);
+            next[0] = view.nextBlock();
+            next[1] = view.nextSlot();
+            int c = view.compareKey(key);
+            return c < 0 || (inclusive && c == 0);
+        };
+
+        RecordPointer predecessor = null;
+        int block = firstPointer.getBlockNumber();
+        int slot = firstPointer.getSlotNumber();
+
+        while (block >= 0) {
+            Boolean notGreater = diskFileManager.readSlot(fileName, block, slot, reader);
+            if (notGreater == null || !notGreater) {
+                break;
             }
+            predecessor = new RecordPointer(block, slot);
+            if (next[0] == block && next[1] == slot) {
+                break;
+            }
+            block = next[0];
+            slot = next[1];
+        }
+
+        return predecessor;
+    }
+
+    // 정렬 삽입이 쌓여 체인 순서와 파일 순서가 많이 어긋났으면 재구성한다
+    private void reorganizeIfScattered(String fileName) throws IOException, SQLException {
+        if (reorganizeThreshold <= 0) {
+            return;
+        }
+        int inserts = insertsSinceCheck.merge(fileName, 1, Integer::sum);
+        if (inserts < CLUSTERING_CHECK_INTERVAL) {
+            return;
         }
-        nextPointerBytes.append("]");
-        byte[] blockData;
+        insertsSinceCheck.remove(fileName);
+
+        // 다른 스레드가 삽입이나 적재, 재구성 중이면 기다리지 않고 다음 확인 때로 미룬다
+        Lock fileLock = getFileLock(fileName).readLock();
+        fileLock.lock();
         try {
-            blockData = diskFileManager.readBlockData(fileName, blockNumber);
-        } catch (IOException e) {
-            blockData = new byte[Constants.BLOCK_SIZE];
+            Lock insertLock = getInsertLock(fileName);
+            if (!insertLock.tryLock()) {
+                return;
+            }
+            try {
+                double clusteringFactor = getClusteringFactor(fileName);
+                if (clusteringFactor > reorganizeThreshold) {
+                    System.out.printf("클러스터링 계수 %.3f 이(가) 기준 %.3f 을(를) 넘어 파일을 재구성합니다.%n",
+                            clusteringFactor, reorganizeThreshold);
+                    reorganize(fileName);
+                }
+            } finally {
+                insertLock.unlock();
+            }
+        } finally {
+            fileLock.unlock();
         }
+    }
 
-        if (blockOffset + recordSize <= Constants.BLOCK_SIZE) {
-            System.arraycopy(recordBytes, 0, blockData, blockOffset, recordSize);
+    // 레코드를 놓을 블록을 고른다. 키 순서상 이웃한 레코드(near)의 블록과 가까운 블록에 자리가 있으면 그곳에,
+    // 없으면 파일 안에서 자리가 있는 아무 블록에, 그것도 없으면 high-water mark 블록부터 이어 붙인다
+    private RecordPointer storeRecord(String fileName, Record record, RecordPointer near) throws IOException {
+        int pageSize = diskFileManager.getPageSize(fileName);
+        byte[] recordBytes = record.toBytes();
 
-            diskFileManager.writeBlockData(fileName, blockNumber, blockData);
-        } else {
-            int firstPartSize = Constants.BLOCK_SIZE - blockOffset;
+        if (recordBytes.length > SlottedPage.getMaxRecordSize(pageSize)) {
+            throw new IllegalArgumentException("레코드가 페이지 크기보다 큽니다: " + recordBytes.length
+                    + "바이트 (페이지 " + pageSize + "바이트)");
+        }
 
-            System.arraycopy(recordBytes, 0, blockData, blockOffset, firstPartSize);
-            diskFileManager.writeBlockData(fileName, blockNumber, blockData);
+        FreeSpaceMap freeSpaceMap = diskFileManager.getFreeSpaceMap(fileName);
+        int nearBlock = near != null ? near.getBlockNumber() : diskFileManager.getAppendBlockNumber(fileName);
 
-            byte[] nextBlockData = new byte[Constants.BLOCK_SIZE];
-            System.arraycopy(recordBytes, firstPartSize, nextBlockData, 0, recordSize - firstPartSize);
-            diskFileManager.writeBlockData(fileName, blockNumber + 1, nextBlockData);
+        // 맵이 틀려 들어가지 않으면 그 블록의 값이 고쳐지므로 같은 블록을 다시 고르지 않는다
+        for (int window : new int[]{NEAR_BLOCK_WINDOW, Integer.MAX_VALUE}) {
+            int blockNumber;
+            while ((blockNumber = freeSpaceMap.findBlock(recordBytes.length, nearBlock, window)) > 0) {
+                RecordPointer pointer = insertIntoBlock(fileName, blockNumber, recordBytes, freeSpaceMap);
+                if (pointer != null) {
+                    return pointer;
+                }
+            }
         }
 
-        // 다음 가용 위치 업데이트
-        int newPosition = pointer.toFileOffset(Constants.BLOCK_SIZE) + recordSize;
-        diskFileManager.updateNextAvailablePosition(fileName, newPosition);
+        int blockNumber = diskFileManager.getAppendBlockNumber(fileName);
+        while (true) {
+            RecordPointer pointer = insertIntoBlock(fileName, blockNumber, recordBytes, freeSpaceMap);
+            if (pointer != null) {
+                diskFileManager.updateAppendBlockNumber(fileName, blockNumber);
+                return pointer;
+            }
+            blockNumber++;
+        }
     }
+
+    // 블록의 새 슬롯에 넣고 여유 공간 맵을 갱신한다. 공간이 없으면 null
+    // 같은 블록을 읽고 있는 검색과 겹치지 않도록 블록의 쓰기 래치를 잡는다
+    private RecordPointer insertIntoBlock(String fileName, int blockNumber, byte[] recordBytes,
+                                          FreeSpaceMap freeSpaceMap) throws IOException {
+        Lock latch = diskFileManager.getBlockLatch(fileName, blockNumber).writeLock();
+        int slot = -1;
+        latch.lock();
+        try {
+            Page page = diskFileManager.pinBlock(fileName, blockNumber);
+            try {
+                slot = SlottedPage.insert(page.getBuffer(), recordBytes);
+                freeSpaceMap.update(blockNumber, SlottedPage.getFreeSpace(page.getBuffer()));
+            } finally {
+                diskFileManager.unpinBlock(page, slot >= 0);
+            }
+        } finally {
+            latch.unlock();
+        }
+        return slot >= 0 ? new RecordPointer(blockNumber, slot) : null;
+    }
+
 //    private void printRecordChain(String fileName) {
 //        try {
-//            int firstOffset = diskFileManager.getFirstRecordPointer(fileName);
-//
-//            RecordPointer pointer = diskFileManager.offsetToPointer(firstOffset);
+//            RecordPointer pointer = diskFileManager.getFirstRecordPointer(fileName);
 //            int count = 0;
 //
 //            while (pointer != null && count < 100) { // 안전장치
 //                count++;
 //                Record record = diskFileManager.readRecord(fileName, pointer);
 //
-//                int nextOffset = record.getNextPointer();
+//                RecordPointer nextPointer = record.getNextPointer();
 //                System.out.println("레코드 #" + count + ": 키=" + record.getSearchKey() +
-//                        ", 다음 포인터=" + nextOffset);
+//                        ", 다음 포인터=" + nextPointer);
 //
-//                if (nextOffset < 0) {
-//                    break;
-//                }
-//
-//                pointer = diskFileManager.offsetToPointer(nextOffset);
+//                pointer = nextPointer;
 //            }
 //
 //        } catch (Exception e) {
 //            System.err.println("[DEBUG] 체인 출력 중 오류: " + e.getMessage());
 //        }
 //    }
-    private void resetFile(String fileName) throws IOException {
-        // 파일 초기화 (첫 레코드 포인터를 -1로 설정)
-        diskFileManager.resetFile(fileName);
-        System.out.println("파일 생성 및 초기화가 완료되었습니다.");
-    }
-
-    public List<String> searchField(String fileName, String fieldName) throws IOException, SQLException {
-        if (!metadataManager.fileExists(fileName)) {
-            System.err.println("파일이 존재하지 않습니다: " + fileName);
-            throw new IllegalArgumentException("파일이 존재하지 않습니다: " + fileName);
-        }
+    // 필드 값을 체인 순서대로 하나씩 돌려주는 커서. 레코드 전체가 아니라 그 필드만 해석한다. 사용 후 닫아야 한다
+    public ChainCursor<String> searchField(String fileName, String fieldName) throws IOException, SQLException {
+        DiskFileManager.Snapshot snapshot = diskFileManager.openSnapshot(fileName);
+        try {
+            Schema schema = getSchema(snapshot);
+            int fieldIndex = schema.getFieldIndex(fieldName);
+            if (fieldIndex == -1) {
+                System.err.println("존재하지 않는 필드: " + fieldName);
+                throw new IllegalArgumentException("존재하지 않는 필드: " + fieldName);
+            }
 
-        int fieldIndex = metadataManager.getFieldIndex(fileName, fieldName);
-        if (fieldIndex == -1) {
-            System.err.println("존재하지 않는 필드: " + fieldName);
-            throw new IllegalArgumentException("존재하지 않는 필드: " + fieldName);
+            String dataFileName = snapshot.getFileName();
+            RecordPointer firstPointer = diskFileManager.getFirstRecordPointer(dataFileName);
+            return new ChainCursor<>(diskFileManager, dataFileName, schema, firstPointer, null, null,
+                    row -> row.getFieldValue(fieldIndex)).releaseOnClose(snapshot);
+        } catch (IOException | SQLException | RuntimeException e) {
+            snapshot.close();
+            throw e;
         }
+    }
 
-        List<String> results = new ArrayList<>();
-        int firstOffset = diskFileManager.getFirstRecordPointer(fileName);
-
-        long fileSize = 0;
+    // minKey <= 키 <= maxKey 인 레코드를 키 순서대로 하나씩 돌려주는 커서. 사용 후 닫아야 한다
+    // 파일 락을 잡지 않으므로 삽입, 삭제, 수정과 함께 돈다. 그 사이에 바뀐 레코드는 보일 수도, 보이지 않을 수도 있다
+    // 연 뒤에 일괄 적재나 재구성이 끝나도 커서는 열 때의 세대를 끝까지 읽는다
+    public ChainCursor<Record> searchRecords(String fileName, String minKey, String maxKey) throws IOException, SQLException {
+        DiskFileManager.Snapshot snapshot = diskFileManager.openSnapshot(fileName);
         try {
-            fileSize = diskFileManager.getFileSize(fileName) * Constants.BLOCK_SIZE;
-        } catch (Exception e) {
-            System.err.println("파일 크기 확인 중 오류: " + e.getMessage());
+            Schema schema = getSchema(snapshot);
+
+            // 검색 범위는 한 번만 인코딩해 두고 인덱스와 각 행의 키 바이트에 그대로 비교한다
+            // 검색 키 타입의 형식에 맞지 않는 값이면 IllegalArgumentException
+            return rangeCursor(snapshot, schema, schema.encodeSearchKey(minKey), schema.encodeSearchKey(maxKey));
+        } catch (IOException | SQLException | RuntimeException e) {
+            snapshot.close();
+            throw e;
         }
+    }
 
-        int recordCount = 0;
-        int maxRecords = 1000;
+    // 일괄 적재나 재구성 뒤 바뀌지 않은 파일이면 메모리의 펜스 인덱스로, 아니면 B+ 트리로
+    // minKey 이상인 첫 레코드 근처부터 체인을 따라간다. 체인은 maxKey 를 넘는 첫 레코드에서 멈춘다
+    // 만든 커서가 snapshot 을 넘겨받는다. 실패하면 호출한 쪽에서 닫는다
+    private ChainCursor<Record> rangeCursor(DiskFileManager.Snapshot snapshot, Schema schema,
+                                            byte[] minKeyBytes, byte[] maxKeyBytes) throws IOException {
+        String dataFileName = snapshot.getFileName();
+        FenceIndex fenceIndex = diskFileManager.getFenceIndex(dataFileName);
+        BPlusTreeIndex index = diskFileManager.getIndex(dataFileName);
+        RecordPointer startPointer;
+        if (fenceIndex != null) {
+            startPointer = fenceIndex.startPointer(minKeyBytes);
+            if (startPointer == null) {
+                startPointer = diskFileManager.getFirstRecordPointer(dataFileName);
+            }
+        } else if (index != null) {
+            startPointer = index.lowerBound(minKeyBytes);
+        } else {
+            startPointer = diskFileManager.getFirstRecordPointer(dataFileName);
+        }
 
-        // 현재 처리 중인 레코드 오프셋
-        int currentOffset = firstOffset;
+        return new ChainCursor<>(diskFileManager, dataFileName, schema, startPointer,
+                minKeyBytes, maxKeyBytes, RecordView::toRecord).releaseOnClose(snapshot);
+    }
 
-        while (currentOffset >= 0 && recordCount < maxRecords) {
-            recordCount++;
+    // 체인을 키 순서대로 따라갈 때 다음 레코드가 같은 블록이나 바로 다음 블록에 있지 않은 비율
+    // 0 이면 키 순서와 파일 순서가 같아 범위 검색이 순차 읽기가 되고, 1 에 가까울수록 임의 읽기가 된다
+    public double getClusteringFactor(String fileName) throws IOException {
+        try (DiskFileManager.Snapshot snapshot = diskFileManager.openSnapshot(fileName)) {
+            return measureClusteringFactor(snapshot.getFileName());
+        }
+    }
 
-            if (currentOffset < 0 || currentOffset >= fileSize) {
+    private double measureClusteringFactor(String fileName) throws IOException {
+        int blockCount = diskFileManager.getFileSize(fileName);
+        int[] next = new int[2];
+        DiskFileManager.SlotReader<Boolean> reader = (page, offset, length) -> {
+            int end = offset + length - Constants.POINTER_SIZE;
+            next[0] = page.getInt(end);
+            next[1] = page.getShort(end + 4) & 0xFFFF;
+            return Boolean.TRUE;
+        };
+
+        RecordPointer first = diskFileManager.getFirstRecordPointer(fileName);
+        int block = first != null ? first.getBlockNumber() : -1;
+        int slot = first != null ? first.getSlotNumber() : 0;
+        long steps = 0;
+        long jumps = 0;
+
+        while (block >= 0 && block < blockCount) {
+            if (diskFileManager.readSlot(fileName, block, slot, reader, reader) == null) {
                 break;
             }
-
-            // 블록 번호, 오프셋 계산
-            int blockNumber = currentOffset / Constants.BLOCK_SIZE;
-            int blockOffset = currentOffset % Constants.BLOCK_SIZE;
-            RecordPointer currentPointer = new RecordPointer(blockNumber, blockOffset);
-
-            Record record;
-            try {
-                record = diskFileManager.readRecord(fileName, currentPointer);
-            } catch (Exception e) {
-                System.err.println("레코드 읽기 실패: " + e.getMessage());
+            if (next[0] == block && next[1] == slot) {
                 break;
             }
+            if (next[0] >= 0) {
+                steps++;
+                if (next[0] != block && next[0] != block + 1) {
+                    jumps++;
+                }
+            }
+            block = next[0];
+            slot = next[1];
+        }
 
-            if (record == null) {
-                System.err.println("레코드 읽기 실패: null 반환됨");
-                break;
+        return steps == 0 ? 0 : (double) jumps / steps;
+    }
+
+    // 체인 순서(키 순서)대로 레코드를 다음 세대에 빽빽하게 다시 쓰고 바꿔 넣는다. 옮긴 레코드 수를 돌려준다
+    // 다음 세대를 다 쓰기 전까지 현재 세대는 그대로이므로 중간에 실패해도 현재 세대로 계속 쓸 수 있다
+    public int reorganize(String fileName) throws IOException, SQLException {
+        // 삽입, 삭제, 수정만 막고 검색은 현재 세대를 계속 읽게 한다
+        Lock fileLock = getFileLock(fileName).readLock();
+        Lock insertLock = getInsertLock(fileName);
+        fileLock.lock();
+        try {
+            insertLock.lock();
+            try {
+                return rewriteOrdered(fileName, diskFileManager.getCurrentFileName(fileName), getSchema(fileName));
+            } finally {
+                insertLock.unlock();
             }
+        } finally {
+            fileLock.unlock();
+        }
+    }
 
-            String fieldValue = record.getFieldValue(fieldName);
-            results.add(fieldValue);
+    private int rewriteOrdered(String fileName, String current, Schema schema) throws IOException {
+        String target = createGeneration(fileName, current, schema);
+
+        int count;
+        try (ChainCursor<BulkLoader.Entry> cursor = new ChainCursor<>(diskFileManager, current, schema,
+                diskFileManager.getFirstRecordPointer(current), null, null,
+                row -> new BulkLoader.Entry(row.searchKeyBytes(), row.toBytes()));
+             BulkLoader loader = new BulkLoader(diskFileManager, target, bulkLoadMemory)) {
+            count = loader.writeOrdered(cursor);
+            // 레코드 위치가 모두 바뀌었으므로 보조 인덱스는 새 세대에서 다시 만든다
+            rebuildHashIndexes(target, schema);
+        } catch (UncheckedIOException e) {
+            diskFileManager.deleteFile(target);
+            throw e.getCause();
+        } catch (IOException | RuntimeException e) {
+            diskFileManager.deleteFile(target);
+            throw e;
+        }
 
-            int nextOffset = record.getNextPointer();
+        diskFileManager.switchGeneration(fileName, target);
+        insertsSinceCheck.remove(fileName);
 
-            if (nextOffset < -1) {
-                break;
-            }
+        System.out.println("파일을 재구성했습니다: " + fileName + " (레코드 " + count + "개, 블록 "
+                + (diskFileManager.getFileSize(target) - 1) + "개)");
+        return count;
+    }
 
-            if (nextOffset > 0 && nextOffset >= fileSize) {
-                break;
+    // CREATE INDEX: 검색 키가 아닌 필드에 해시 인덱스를 만들고 지금 있는 레코드를 넣는다. 넣은 엔트리 수를 돌려준다
+    // 이후 삽입, 삭제, 수정과 일괄 적재, 재구성 때 함께 갱신된다
+    public long createIndex(String fileName, String fieldName) throws IOException, SQLException {
+        HashIndex index;
+        String dataFileName;
+        Lock lock = getFileLock(fileName).writeLock();
+        lock.lock();
+        try {
+            Schema schema = getSchema(fileName);
+            int fieldIndex = schema.getFieldIndex(fieldName);
+            if (fieldIndex == -1) {
+                throw new IllegalArgumentException("존재하지 않는 필드: " + fieldName);
             }
-
-            if (nextOffset == currentOffset && nextOffset != -1) {
-                break;
+            if (fieldIndex == 0) {
+                throw new IllegalArgumentException("검색 키 필드에는 이미 B+ 트리 인덱스가 있습니다: " + fieldName);
             }
 
-            currentOffset = nextOffset;
+            dataFileName = diskFileManager.getCurrentFileName(fileName);
+            index = diskFileManager.createHashIndex(dataFileName, schema, fieldIndex);
+            HashIndex[] fieldIndexes = new HashIndex[schema.getFieldCount()];
+            fieldIndexes[fieldIndex] = index;
+            fillHashIndexes(dataFileName, schema, fieldIndexes);
+            diskFileManager.checkpoint();
+        } finally {
+            lock.unlock();
         }
 
-        System.out.println("검색 결과 수: " + results.size());
-
-        return results;
+        System.out.println("인덱스를 만들었습니다: " + HashIndex.getFileName(dataFileName, fieldName)
+                + " (엔트리 " + index.getEntryCount() + "개)");
+        return index.getEntryCount();
     }
 
-    public List<Record> searchRecords(String fileName, String minKey, String maxKey) throws IOException, SQLException {
-        System.out.println("검색 조건: " + minKey + " <= 키 <= " + maxKey);
-
-        if (!metadataManager.fileExists(fileName)) {
-            throw new IllegalArgumentException("파일이 존재하지 않습니다: " + fileName);
-        }
+    // fieldName = value 인 레코드들. 스트림을 닫아야 한다. 값 형식이 틀리면 IllegalArgumentException
+    // 해시 인덱스가 있으면 버킷에서 찾은 포인터를 블록 순서로 읽고, 검색 키 필드면 B+ 트리로 범위를 좁히며,
+    // 둘 다 아니면 체인 전체를 읽으며 거른다. 읽기 오류는 UncheckedIOException 으로 전달된다
+    public Stream<Record> searchEqual(String fileName, String fieldName, String value) throws IOException, SQLException {
+        // 스트림을 닫을 때까지 스냅숏을 잡아 찾은 포인터의 슬롯이 회수되어 다른 레코드를 가리키게 되지 않도록 한다
+        DiskFileManager.Snapshot snapshot = diskFileManager.openSnapshot(fileName);
+        try {
+            Schema schema = getSchema(snapshot);
+            int fieldIndex = schema.getFieldIndex(fieldName);
+            if (fieldIndex == -1) {
+                throw new IllegalArgumentException("존재하지 않는 필드: " + fieldName);
+            }
 
-        List<Record> results = new ArrayList<>();
+            byte[] key = schema.encodeKey(fieldIndex, value);
+            if (key == null) {
+                throw new IllegalArgumentException("검색할 값을 입력해야 합니다.");
+            }
+            if (fieldIndex == 0) {
+                return rangeCursor(snapshot, schema, key, key).stream();
+            }
 
-        int firstOffset = diskFileManager.getFirstRecordPointer(fileName);
+            String dataFileName = snapshot.getFileName();
+            HashIndex index = diskFileManager.getHashIndexes(dataFileName, schema)[fieldIndex];
+            if (index == null) {
+                return new ChainCursor<>(diskFileManager, dataFileName, schema,
+                        diskFileManager.getFirstRecordPointer(dataFileName), null, null,
+                        row -> row.compareKey(fieldIndex, key) == 0 ? row.toRecord() : null)
+                        .releaseOnClose(snapshot).stream().filter(Objects::nonNull);
+            }
 
-        int currentOffset = firstOffset;
-        while (currentOffset >= 0) {
+            // 같은 블록의 레코드를 이어서 읽도록 정렬한다
+            List<RecordPointer> pointers = index.search(key);
+            pointers.sort(Comparator.comparingInt(RecordPointer::getBlockNumber).thenComparingInt(RecordPointer::getSlotNumber));
+            // 찾은 뒤 제자리에서 값이 바뀐 레코드는 다시 비교해 거른다
+            RecordView view = new RecordView(schema);
+            DiskFileManager.SlotReader<Record> reader = (page, offset, length) -> {
+                view.reset(page, offset, length);
+                return view.compareKey(fieldIndex, key) == 0 ? view.toRecord() : null;
+            };
+            return pointers.stream().map(pointer -> {
+                try {
+                    return diskFileManager.readSlot(dataFileName, pointer, reader);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).filter(Objects::nonNull).onClose(snapshot::close);
+        } catch (IOException | SQLException | RuntimeException e) {
+            snapshot.close();
+            throw e;
+        }
+    }
 
-            int blockNumber = currentOffset / Constants.BLOCK_SIZE;
-            int blockOffset = currentOffset % Constants.BLOCK_SIZE;
-            //System.out.println("블록 번호 : " + blockNumber + "오프셋 :" + blockOffset);
-            RecordPointer currentPointer = new RecordPointer(blockNumber, blockOffset);
+    // 스냅숏이 잡은 세대의 스키마. 파일이 없으면 IllegalArgumentException
+    private Schema getSchema(DiskFileManager.Snapshot snapshot) throws SQLException {
+        Schema schema = snapshot.getSchema();
+        if (schema == null) {
+            throw new IllegalArgumentException("파일이 존재하지 않습니다: " + snapshot.getFileName());
+        }
+        return schema;
+    }
 
-            Record record;
-            try {
-                record = diskFileManager.readRecord(fileName, currentPointer);
-            } catch (Exception e) {
-                break;
+    // 파일의 보조 인덱스를 모두 비우고 체인을 한 번 읽어 다시 채운다
+    private void rebuildHashIndexes(String fileName, Schema schema) throws IOException {
+        HashIndex[] hashIndexes = diskFileManager.getHashIndexes(fileName, schema);
+        boolean any = false;
+        for (HashIndex index : hashIndexes) {
+            if (index != null) {
+                index.clear();
+                any = true;
             }
+        }
+        if (any) {
+            fillHashIndexes(fileName, schema, hashIndexes);
+        }
+    }
 
-            if (record == null) {
-                break;
+    private void fillHashIndexes(String fileName, Schema schema, HashIndex[] hashIndexes) throws IOException {
+        RecordView view = new RecordView(schema);
+        byte[][] fieldKeys = new byte[hashIndexes.length][];
+        int[] next = new int[2];
+        DiskFileManager.SlotReader<Boolean> reader = (page, offset, length) -> {
+            view.reset(page, offset, length);
+            next[0] = view.nextBlock();
+            next[1] = view.nextSlot();
+            for (int i = 0; i < hashIndexes.length; i++) {
+                fieldKeys[i] = hashIndexes[i] != null ? view.keyBytes(i) : null;
             }
+            return Boolean.TRUE;
+        };
 
-            String key = record.getSearchKey();
+        int blockCount = diskFileManager.getFileSize(fileName);
+        RecordPointer first = diskFileManager.getFirstRecordPointer(fileName);
+        int block = first != null ? first.getBlockNumber() : -1;
+        int slot = first != null ? first.getSlotNumber() : 0;
 
-            if (key.compareTo(minKey) >= 0 && key.compareTo(maxKey) <= 0) {
-                results.add(record);
+        while (block >= 0 && block < blockCount) {
+            if (diskFileManager.readSlot(fileName, block, slot, reader) == null) {
+                break;
             }
-
-            if (key.compareTo(maxKey) > 0) {
+            RecordPointer pointer = new RecordPointer(block, slot);
+            for (int i = 0; i < hashIndexes.length; i++) {
+                if (fieldKeys[i] != null) {
+                    hashIndexes[i].insert(fieldKeys[i], pointer);
+                }
+            }
+            if (next[0] == block && next[1] == slot) {
                 break;
             }
-
-            int nextOffset = record.getNextPointer();
-
-            currentOffset = nextOffset;
+            block = next[0];
+            slot = next[1];
         }
-
-        System.out.println("검색 결과 수: " + results.size());
-
-        return results;
     }
-
-}
\ No newline at end of file
+}
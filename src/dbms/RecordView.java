@@ -0,0 +1,131 @@
+package dbms;
+
+import dbms.util.ByteUtils;
+import dbms.util.Constants;
+import dbms.util.RecordPointer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// 페이지 안의 레코드 바이트를 그대로 가리키는 재사용 객체 (플라이웨이트)
+// 행마다 Record 를 만들지 않고 필요한 필드만 읽는다. 페이지가 pin 되어 있는 동안(SlotReader 안에서)만 유효하다
+public final class RecordView {
+    private final Schema schema;
+
+    private ByteBuffer page;
+    private int offset;
+    private int length;
+    private byte nullBitmap;
+
+    public RecordView(Schema schema) {
+        this.schema = schema;
+    }
+
+    // 다른 레코드를 가리키도록 바꾼다
+    public RecordView reset(ByteBuffer page, int offset, int length) {
+        this.page = page;
+        this.offset = offset;
+        this.length = length;
+        this.nullBitmap = page.get(offset);
+        return this;
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    public boolean isNull(int fieldIndex) {
+        return ByteUtils.isFieldNull(nullBitmap, fieldIndex);
+    }
+
+    // 필드 값의 바이트를 dst 에 복사하고 길이를 돌려준다 (가변 길이 필드는 실제 길이). null 필드면 -1
+    public int fieldBytes(int fieldIndex, byte[] dst) {
+        if (isNull(fieldIndex)) {
+            return -1;
+        }
+        return schema.copyField(page, fieldPosition(fieldIndex), fieldIndex, dst);
+    }
+
+    public String getFieldValue(int fieldIndex) {
+        if (isNull(fieldIndex)) {
+            return null;
+        }
+        return schema.readField(page, fieldPosition(fieldIndex), fieldIndex);
+    }
+
+    // 검색 키를 Schema.encodeSearchKey 로 인코딩한 key 와 바이트 단위로 비교한다. null 키는 가장 작다
+    public int compareKey(byte[] key) {
+        return compareKey(0, key);
+    }
+
+    // 필드 값을 Schema.encodeKey 로 인코딩한 key 와 비교한다. null 필드는 가장 작다
+    public int compareKey(int fieldIndex, byte[] key) {
+        if (isNull(fieldIndex)) {
+            return -1;
+        }
+        return schema.compareKey(page, fieldPosition(fieldIndex), fieldIndex, key);
+    }
+
+    // 검색 키 필드의 바이트 복사본. null 키면 null
+    public byte[] searchKeyBytes() {
+        return keyBytes(0);
+    }
+
+    // 필드 값의 바이트 복사본 (가변 길이 필드는 길이 접두어 제외). null 필드면 null
+    public byte[] keyBytes(int fieldIndex) {
+        if (isNull(fieldIndex)) {
+            return null;
+        }
+        byte[] key = new byte[schema.getFieldLength(fieldIndex)];
+        int length = fieldBytes(fieldIndex, key);
+        return length == key.length ? key : Arrays.copyOf(key, length);
+    }
+
+    // 레코드 전체 바이트의 복사본 (Record.toBytes 형식)
+    public byte[] toBytes() {
+        byte[] bytes = new byte[length];
+        page.get(offset, bytes);
+        return bytes;
+    }
+
+    // 다음 레코드의 블록 번호. 마지막 레코드면 -1
+    public int nextBlock() {
+        return page.getInt(pointerPosition());
+    }
+
+    public int nextSlot() {
+        return page.getShort(pointerPosition() + 4) & 0xFFFF;
+    }
+
+    public RecordPointer nextPointer() {
+        return ByteUtils.readPointer(page, pointerPosition());
+    }
+
+    // 호출한 쪽이 레코드 전체를 원할 때만 객체를 만든다
+    public Record toRecord() {
+        int fieldCount = schema.getFieldCount();
+        List<String> fieldValues = new ArrayList<>(fieldCount);
+        int position = offset + Constants.NULL_BITMAP_SIZE;
+
+        for (int i = 0; i < fieldCount; i++) {
+            if (isNull(i)) {
+                fieldValues.add(null);
+            } else {
+                fieldValues.add(schema.readField(page, position, i));
+                position += schema.fieldSizeAt(page, position, i);
+            }
+        }
+
+        return new Record(fieldValues, schema, nullBitmap, nextPointer());
+    }
+
+    private int fieldPosition(int fieldIndex) {
+        return offset + schema.getFieldOffset(page, offset, nullBitmap, fieldIndex);
+    }
+
+    private int pointerPosition() {
+        return offset + length - Constants.POINTER_SIZE;
+    }
+}
@@ -0,0 +1,184 @@
+package dbms;
+
+import dbms.util.ByteUtils;
+import dbms.util.Constants;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// 한 파일의 필드 구성. 한 번 만들면 바뀌지 않으므로 레코드를 읽을 때마다 메타데이터를 조회하지 않고 공유한다
+// fieldLengths 는 카탈로그에 저장되는 선언 길이이고 (FieldType 참고), getFieldLength 는 레코드 안에서 차지하는 바이트 수다
+public final class Schema {
+    private final List<String> fieldNames;
+    private final List<FieldType> fieldTypes;
+    private final List<Integer> fieldLengths;
+    private final FieldType[] types;
+    private final int[] declaredLengths;
+    private final int[] lengths;
+    private final int[] offsets;            // null 필드가 없을 때 레코드 안에서 각 필드의 시작 위치 (첫 가변 길이 필드까지만 고정)
+    private final int firstVariableField;   // 첫 가변 길이 필드 번호. 없으면 필드 수
+    private final Map<String, Integer> fieldIndexes;
+    private final int maxRecordSize;
+
+    // 모든 필드가 CHAR 인 스키마
+    public Schema(List<String> fieldNames, List<Integer> fieldLengths) {
+        this(fieldNames, Collections.nCopies(fieldNames.size(), FieldType.CHAR), fieldLengths);
+    }
+
+    public Schema(List<String> fieldNames, List<FieldType> fieldTypes, List<Integer> fieldLengths) {
+        if (fieldNames.size() != fieldLengths.size() || fieldNames.size() != fieldTypes.size()) {
+            throw new IllegalArgumentException("필드 이름, 타입, 길이의 개수가 다릅니다.");
+        }
+
+        this.fieldNames = Collections.unmodifiableList(new ArrayList<>(fieldNames));
+        this.fieldTypes = Collections.unmodifiableList(new ArrayList<>(fieldTypes));
+        this.fieldLengths = Collections.unmodifiableList(new ArrayList<>(fieldLengths));
+        this.types = new FieldType[fieldLengths.size()];
+        this.declaredLengths = new int[fieldLengths.size()];
+        this.lengths = new int[fieldLengths.size()];
+        this.offsets = new int[fieldLengths.size()];
+        this.fieldIndexes = new HashMap<>();
+
+        int position = Constants.NULL_BITMAP_SIZE;
+        int firstVariable = lengths.length;
+        for (int i = 0; i < lengths.length; i++) {
+            types[i] = fieldTypes.get(i);
+            declaredLengths[i] = fieldLengths.get(i);
+            types[i].validateLength(declaredLengths[i]);
+            lengths[i] = types[i].getStorageLength(declaredLengths[i]);
+            offsets[i] = position;
+            if (types[i].isVariableLength() && firstVariable == lengths.length) {
+                firstVariable = i;
+            }
+            position += lengths[i];
+            fieldIndexes.putIfAbsent(fieldNames.get(i), i);
+        }
+        this.firstVariableField = firstVariable;
+        this.maxRecordSize = position + Constants.POINTER_SIZE;
+    }
+
+    public int getFieldCount() {
+        return lengths.length;
+    }
+
+    public List<String> getFieldNames() {
+        return fieldNames;
+    }
+
+    public List<FieldType> getFieldTypes() {
+        return fieldTypes;
+    }
+
+    // 선언 길이 목록
+    public List<Integer> getFieldLengths() {
+        return fieldLengths;
+    }
+
+    public String getFieldName(int index) {
+        return fieldNames.get(index);
+    }
+
+    public FieldType getFieldType(int index) {
+        return types[index];
+    }
+
+    // 레코드 안에서 필드가 차지하는 최대 바이트 수 (가변 길이 필드는 길이 접두어 포함)
+    public int getFieldLength(int index) {
+        return lengths[index];
+    }
+
+    public int getDeclaredLength(int index) {
+        return declaredLengths[index];
+    }
+
+    // 없는 필드면 -1
+    public int getFieldIndex(String fieldName) {
+        return fieldIndexes.getOrDefault(fieldName, -1);
+    }
+
+    public boolean hasVariableLengthFields() {
+        return firstVariableField < lengths.length;
+    }
+
+    // recordOffset 에서 시작하는 레코드 안에서 index 번째 필드의 위치 (레코드 시작 기준)
+    // null 필드는 레코드에 자리를 차지하지 않으므로 앞선 null 필드 길이만큼 당겨진다
+    // 앞에 가변 길이 필드가 있으면 그 길이 접두어를 읽어 가며 찾는다
+    public int getFieldOffset(ByteBuffer record, int recordOffset, byte nullBitmap, int index) {
+        int fixedIndex = Math.min(index, firstVariableField);
+        int offset = offsets[fixedIndex];
+        if (nullBitmap != 0) {
+            for (int i = 0; i < fixedIndex; i++) {
+                if (ByteUtils.isFieldNull(nullBitmap, i)) {
+                    offset -= lengths[i];
+                }
+            }
+        }
+
+        for (int i = fixedIndex; i < index; i++) {
+            if (!ByteUtils.isFieldNull(nullBitmap, i)) {
+                offset += types[i].sizeAt(record, recordOffset + offset, declaredLengths[i]);
+            }
+        }
+        return offset;
+    }
+
+    // 모든 필드가 채워진 레코드의 크기 (null 비트맵과 다음 포인터 포함)
+    public int getMaxRecordSize() {
+        return maxRecordSize;
+    }
+
+    // 인덱스에 저장하는 검색 키 바이트 수
+    public int getSearchKeyLength() {
+        return getKeyLength(0);
+    }
+
+    // 검색 키 값을 저장된 키와 바로 비교할 수 있는 바이트로 바꾼다. null 이면 null
+    public byte[] encodeSearchKey(String value) {
+        return encodeKey(0, value);
+    }
+
+    // position 에 저장된 검색 키와 encodeSearchKey 로 만든 key 를 비교한다
+    public int compareSearchKey(ByteBuffer buffer, int position, byte[] key) {
+        return compareKey(buffer, position, 0, key);
+    }
+
+    // 검색 키가 아닌 필드도 같은 방식으로 인덱스 키를 만든다 (보조 인덱스와 동등 조건 검색)
+    public int getKeyLength(int index) {
+        return types[index].getKeyLength(declaredLengths[index]);
+    }
+
+    public byte[] encodeKey(int index, String value) {
+        return types[index].encodeKey(value, declaredLengths[index]);
+    }
+
+    public int compareKey(ByteBuffer buffer, int position, int index, byte[] key) {
+        return types[index].compareKey(buffer, position, declaredLengths[index], key);
+    }
+
+    // 필드 값을 타입에 맞게 바이너리로 쓰고 쓴 바이트 수를 돌려준다
+    public int writeField(ByteBuffer buffer, int position, int index, String value) {
+        return types[index].write(buffer, position, declaredLengths[index], value);
+    }
+
+    public String readField(ByteBuffer buffer, int position, int index) {
+        return types[index].read(buffer, position, declaredLengths[index]);
+    }
+
+    // position 에 저장된 필드가 실제로 차지하는 바이트 수
+    public int fieldSizeAt(ByteBuffer buffer, int position, int index) {
+        return types[index].sizeAt(buffer, position, declaredLengths[index]);
+    }
+
+    public int copyField(ByteBuffer buffer, int position, int index, byte[] dst) {
+        return types[index].copyBytes(buffer, position, declaredLengths[index], dst);
+    }
+
+    // 값을 쓸 때 차지할 바이트 수
+    public int encodedFieldLength(int index, String value) {
+        return types[index].encodedLength(value, declaredLengths[index]);
+    }
+}
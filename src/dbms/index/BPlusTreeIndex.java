@@ -0,0 +1,583 @@
+package dbms.index;
+
+import dbms.DiskFileManager;
+import dbms.storage.Page;
+import dbms.util.ByteUtils;
+import dbms.util.Constants;
+import dbms.util.RecordPointer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+// 데이터 파일 옆의 인덱스 파일(<파일명>.idx)에 저장되는 검색 키 B+ 트리
+// 키는 필드 길이만큼 0으로 채운 고정 길이 바이트이며, 같은 키가 여러 번 들어갈 수 있다
+// 공개 메서드는 인덱스마다 동기화되어 여러 스레드가 함께 쓸 수 있다 (bulkBuilder 는 파일을 혼자 쓸 때만)
+//
+// 헤더 블록: 데이터 파일과 같은 [0..15] + [16..19] 인덱스 매직, [20..23] 루트 블록,
+//           [24..27] 다음에 할당할 블록, [28..29] 키 길이
+// 노드: [0] 종류, [1..2] 엔트리 수, [3..6] 다음 리프, [7..10] 이전 리프
+//       리프 엔트리 = [키][레코드 포인터 6바이트]
+//       내부 노드 = [11..14] 첫 자식 + 엔트리 [키][오른쪽 자식 4바이트]
+public class BPlusTreeIndex {
+    public static final String FILE_SUFFIX = ".idx";
+
+    private static final byte[] EMPTY_KEY = new byte[0];
+    public static final int INDEX_MAGIC = 0x44424958; // "DBIX"
+
+    private static final int INDEX_MAGIC_OFFSET = 16;
+    private static final int ROOT_OFFSET = 20;
+    private static final int NEXT_BLOCK_OFFSET = 24;
+    private static final int KEY_LENGTH_OFFSET = 28;
+
+    private static final byte LEAF = 1;
+    private static final byte INTERNAL = 2;
+    private static final int TYPE_OFFSET = 0;
+    private static final int COUNT_OFFSET = 1;
+    private static final int NEXT_LEAF_OFFSET = 3;
+    private static final int PREV_LEAF_OFFSET = 7;
+    private static final int NODE_HEADER_SIZE = 11;
+    private static final int CHILD_SIZE = 4;
+    private static final int NO_BLOCK = -1;
+
+    private static final int MIN_FANOUT = 4; // 분할이 의미 있으려면 노드당 최소 엔트리 수
+
+    private final DiskFileManager diskFileManager;
+    private final String indexFileName;
+    private final int keyLength;
+    private final int leafCapacity;
+    private final int internalCapacity;
+
+    private int rootBlock;
+    private int nextBlock;
+
+    private BPlusTreeIndex(DiskFileManager diskFileManager, String indexFileName, int keyLength,
+                           int pageSize, int rootBlock, int nextBlock) {
+        this.diskFileManager = diskFileManager;
+        this.indexFileName = indexFileName;
+        this.keyLength = keyLength;
+        this.leafCapacity = (pageSize - NODE_HEADER_SIZE) / (keyLength + Constants.POINTER_SIZE);
+        this.internalCapacity = (pageSize - NODE_HEADER_SIZE - CHILD_SIZE) / (keyLength + CHILD_SIZE);
+        this.rootBlock = rootBlock;
+        this.nextBlock = nextBlock;
+    }
+
+    // 빈 인덱스를 만든다. 페이지 크기는 데이터 파일과 같게 하되, 키가 길면 팬아웃이 나오도록 키운다
+    public static BPlusTreeIndex create(DiskFileManager diskFileManager, String fileName, int keyLength) throws IOException {
+        int pageSize = diskFileManager.getPageSize(fileName);
+        while (pageSize - NODE_HEADER_SIZE - CHILD_SIZE < MIN_FANOUT * (keyLength + Constants.POINTER_SIZE)) {
+            pageSize *= 2;
+            if (pageSize > Constants.MAX_PAGE_SIZE) {
+                throw new IllegalArgumentException("검색 키가 너무 길어 인덱스를 만들 수 없습니다: " + keyLength + "바이트");
+            }
+        }
+
+        String indexFileName = fileName + FILE_SUFFIX;
+        diskFileManager.createFile(indexFileName, pageSize);
+
+        BPlusTreeIndex index = new BPlusTreeIndex(diskFileManager, indexFileName, keyLength, pageSize, NO_BLOCK, 1);
+        index.initRoot();
+        return index;
+    }
+
+    // 기존 인덱스 파일을 연다. 없으면 null
+    public static BPlusTreeIndex open(DiskFileManager diskFileManager, String fileName) throws IOException {
+        String indexFileName = fileName + FILE_SUFFIX;
+        if (!diskFileManager.exists(indexFileName)) {
+            return null;
+        }
+
+        int pageSize = diskFileManager.getPageSize(indexFileName);
+        Page header = diskFileManager.pinBlock(indexFileName, 0);
+        try {
+            ByteBuffer buf = header.getBuffer();
+            if (buf.getInt(INDEX_MAGIC_OFFSET) != INDEX_MAGIC) {
+                throw new IOException("인덱스 파일이 아닙니다: " + indexFileName);
+            }
+            return new BPlusTreeIndex(diskFileManager, indexFileName, buf.getShort(KEY_LENGTH_OFFSET) & 0xFFFF,
+                    pageSize, buf.getInt(ROOT_OFFSET), buf.getInt(NEXT_BLOCK_OFFSET));
+        } finally {
+            diskFileManager.unpinBlock(header, false);
+        }
+    }
+
+    // 모든 엔트리를 지우고 빈 리프 하나만 루트로 남긴다
+    public synchronized void clear() throws IOException {
+        diskFileManager.createFile(indexFileName, diskFileManager.getPageSize(indexFileName));
+        initRoot();
+    }
+
+    private void initRoot() throws IOException {
+        nextBlock = 1;
+        rootBlock = allocateNode(LEAF);
+        writeHeader();
+    }
+
+    // 키는 모두 ByteUtils.encodeKey 로 인코딩한 바이트이며 부호 없는 바이트 순서로 비교한다. null 키는 가장 작은 키로 본다
+
+    // key 이상인 첫 엔트리의 레코드 포인터 (범위 검색의 시작점). 없으면 null
+    public synchronized RecordPointer lowerBound(byte[] key) throws IOException {
+        key = orEmpty(key);
+        int block = findLeaf(key, false);
+
+        while (block != NO_BLOCK) {
+            Page page = diskFileManager.pinBlock(indexFileName, block);
+            try {
+                ByteBuffer buf = page.getBuffer();
+                int pos = searchLeaf(buf, key, false);
+                if (pos < getCount(buf)) {
+                    return readLeafPointer(buf, pos);
+                }
+                block = buf.getInt(NEXT_LEAF_OFFSET);
+            } finally {
+                diskFileManager.unpinBlock(page, false);
+            }
+        }
+        return null;
+    }
+
+    // key 이하인 마지막 엔트리의 레코드 포인터 (정렬 삽입 시 바로 앞 레코드). 없으면 null
+    public synchronized RecordPointer floor(byte[] key) throws IOException {
+        return last(orEmpty(key), true);
+    }
+
+    // key 보다 작은 마지막 엔트리의 레코드 포인터 (key 인 레코드들을 체인에서 뗄 때 바로 앞 레코드). 없으면 null
+    public synchronized RecordPointer lower(byte[] key) throws IOException {
+        return last(orEmpty(key), false);
+    }
+
+    private RecordPointer last(byte[] key, boolean inclusive) throws IOException {
+        int block = findLeaf(key, inclusive);
+        boolean first = true;
+
+        while (block != NO_BLOCK) {
+            Page page = diskFileManager.pinBlock(indexFileName, block);
+            try {
+                ByteBuffer buf = page.getBuffer();
+                int pos = first ? searchLeaf(buf, key, inclusive) : getCount(buf);
+                if (pos > 0) {
+                    return readLeafPointer(buf, pos - 1);
+                }
+                block = buf.getInt(PREV_LEAF_OFFSET);
+                first = false;
+            } finally {
+                diskFileManager.unpinBlock(page, false);
+            }
+        }
+        return null;
+    }
+
+    // 같은 키가 이미 있으면 그 뒤에 넣는다 (레코드 체인의 순서와 같다)
+    public synchronized void insert(byte[] key, RecordPointer pointer) throws IOException {
+        key = orEmpty(key);
+        byte[] entry = new byte[leafEntrySize()];
+        writeKey(entry, key);
+        ByteUtils.writePointer(ByteBuffer.wrap(entry), keyLength, pointer);
+
+        Deque<Integer> path = new ArrayDeque<>();
+        int block = rootBlock;
+        while (true) {
+            Page page = diskFileManager.pinBlock(indexFileName, block);
+            try {
+                ByteBuffer buf = page.getBuffer();
+                if (buf.get(TYPE_OFFSET) == LEAF) {
+                    break;
+                }
+                path.push(block);
+                block = buf.getInt(childPosition(searchInternal(buf, key, true)));
+            } finally {
+                diskFileManager.unpinBlock(page, false);
+            }
+        }
+
+        Page leaf = diskFileManager.pinBlock(indexFileName, block);
+        byte[] separator;
+        int rightBlock;
+        try {
+            ByteBuffer buf = leaf.getBuffer();
+            int count = getCount(buf);
+            int pos = searchLeaf(buf, key, true);
+
+            if (count < leafCapacity) {
+                insertEntry(buf, NODE_HEADER_SIZE, leafEntrySize(), count, pos, entry);
+                return;
+            }
+
+            // 가득 찬 리프를 반으로 나누고 오른쪽 노드의 첫 키를 부모로 올린다
+            byte[] all = withInserted(buf, NODE_HEADER_SIZE, leafEntrySize(), count, pos, entry);
+            int leftCount = (count + 1) / 2;
+
+            rightBlock = allocateNode(LEAF);
+            int oldNext = buf.getInt(NEXT_LEAF_OFFSET);
+
+            Page right = diskFileManager.pinBlock(indexFileName, rightBlock);
+            try {
+                ByteBuffer rightBuf = right.getBuffer();
+                int leftBytes = leftCount * leafEntrySize();
+                rightBuf.put(NODE_HEADER_SIZE, all, leftBytes, all.length - leftBytes);
+                setCount(rightBuf, count + 1 - leftCount);
+                rightBuf.putInt(NEXT_LEAF_OFFSET, oldNext);
+                rightBuf.putInt(PREV_LEAF_OFFSET, block);
+            } finally {
+                diskFileManager.unpinBlock(right, true);
+            }
+
+            buf.put(NODE_HEADER_SIZE, all, 0, leftCount * leafEntrySize());
+            setCount(buf, leftCount);
+            buf.putInt(NEXT_LEAF_OFFSET, rightBlock);
+
+            if (oldNext != NO_BLOCK) {
+                Page next = diskFileManager.pinBlock(indexFileName, oldNext);
+                try {
+                    next.getBuffer().putInt(PREV_LEAF_OFFSET, rightBlock);
+                } finally {
+                    diskFileManager.unpinBlock(next, true);
+                }
+            }
+
+            separator = new byte[keyLength];
+            System.arraycopy(all, leftCount * leafEntrySize(), separator, 0, keyLength);
+        } finally {
+            diskFileManager.unpinBlock(leaf, true);
+        }
+
+        insertIntoParent(path, block, separator, rightBlock);
+        writeHeader();
+    }
+
+    // key 와 pointer 가 모두 같은 엔트리를 지운다. 지웠으면 true
+    // 노드를 합치지 않으므로 빈 리프가 남을 수 있다. 검색은 빈 리프를 건너뛰며, 재구성이나 일괄 적재 때 다시 빽빽해진다
+    public synchronized boolean delete(byte[] key, RecordPointer pointer) throws IOException {
+        key = orEmpty(key);
+        int block = findLeaf(key, false);
+
+        while (block != NO_BLOCK) {
+            Page page = diskFileManager.pinBlock(indexFileName, block);
+            boolean removed = false;
+            try {
+                ByteBuffer buf = page.getBuffer();
+                int count = getCount(buf);
+                for (int pos = searchLeaf(buf, key, false); pos < count; pos++) {
+                    int position = NODE_HEADER_SIZE + pos * leafEntrySize();
+                    if (ByteUtils.compareKey(buf, position, keyLength, key) != 0) {
+                        return false;
+                    }
+                    if (pointer.equals(readLeafPointer(buf, pos))) {
+                        removeEntry(buf, NODE_HEADER_SIZE, leafEntrySize(), count, pos);
+                        removed = true;
+                        return true;
+                    }
+                }
+                block = buf.getInt(NEXT_LEAF_OFFSET);
+            } finally {
+                diskFileManager.unpinBlock(page, removed);
+            }
+        }
+        return false;
+    }
+
+    // 정렬된 순서로 엔트리를 받아 리프를 가득 채우며 아래에서부터 트리를 쌓는다
+    public Builder bulkBuilder() throws IOException {
+        clear();
+        return new Builder();
+    }
+
+    public class Builder {
+        private final List<byte[]> firstKeys = new ArrayList<>();
+        private final List<Integer> blocks = new ArrayList<>();
+        private Page current;
+        private int count;
+
+        private Builder() {
+        }
+
+        public void add(byte[] key, RecordPointer pointer) throws IOException {
+            if (current == null) {
+                current = diskFileManager.pinBlock(indexFileName, rootBlock);
+                blocks.add(rootBlock);
+            } else if (count == leafCapacity) {
+                // 다음 리프는 항상 바로 뒤 블록이므로 현재 리프를 먼저 놓아 pin 하는 페이지를 하나로 유지한다
+                int previousBlock = blocks.get(blocks.size() - 1);
+                ByteBuffer buf = current.getBuffer();
+                setCount(buf, count);
+                buf.putInt(NEXT_LEAF_OFFSET, nextBlock);
+                diskFileManager.unpinBlock(current, true);
+
+                int block = allocateNode(LEAF);
+                current = diskFileManager.pinBlock(indexFileName, block);
+                current.getBuffer().putInt(PREV_LEAF_OFFSET, previousBlock);
+                blocks.add(block);
+                count = 0;
+            }
+
+            ByteBuffer buf = current.getBuffer();
+            int position = NODE_HEADER_SIZE + count * leafEntrySize();
+            byte[] keyBytes = new byte[keyLength];
+            writeKey(keyBytes, orEmpty(key));
+            buf.put(position, keyBytes);
+            ByteUtils.writePointer(buf, position + keyLength, pointer);
+
+            if (count == 0) {
+                firstKeys.add(keyBytes);
+            }
+            count++;
+        }
+
+        public void finish() throws IOException {
+            if (current == null) {
+                return;
+            }
+            setCount(current.getBuffer(), count);
+            diskFileManager.unpinBlock(current, true);
+            current = null;
+
+            List<byte[]> levelKeys = firstKeys;
+            List<Integer> levelBlocks = blocks;
+            while (levelBlocks.size() > 1) {
+                List<byte[]> parentKeys = new ArrayList<>();
+                List<Integer> parentBlocks = new ArrayList<>();
+
+                for (int i = 0; i < levelBlocks.size(); i += internalCapacity + 1) {
+                    int end = Math.min(levelBlocks.size(), i + internalCapacity + 1);
+                    int block = allocateNode(INTERNAL);
+
+                    Page page = diskFileManager.pinBlock(indexFileName, block);
+                    try {
+                        ByteBuffer buf = page.getBuffer();
+                        buf.putInt(NODE_HEADER_SIZE, levelBlocks.get(i));
+                        for (int j = i + 1; j < end; j++) {
+                            int position = internalEntryPosition(j - i - 1);
+                            buf.put(position, levelKeys.get(j));
+                            buf.putInt(position + keyLength, levelBlocks.get(j));
+                        }
+                        setCount(buf, end - i - 1);
+                    } finally {
+                        diskFileManager.unpinBlock(page, true);
+                    }
+
+                    parentKeys.add(levelKeys.get(i));
+                    parentBlocks.add(block);
+                }
+
+                levelKeys = parentKeys;
+                levelBlocks = parentBlocks;
+            }
+
+            rootBlock = levelBlocks.get(0);
+            writeHeader();
+        }
+    }
+
+    private void insertIntoParent(Deque<Integer> path, int leftBlock, byte[] separator, int rightBlock) throws IOException {
+        if (path.isEmpty()) {
+            int newRoot = allocateNode(INTERNAL);
+            Page page = diskFileManager.pinBlock(indexFileName, newRoot);
+            try {
+                ByteBuffer buf = page.getBuffer();
+                buf.putInt(NODE_HEADER_SIZE, leftBlock);
+                buf.put(internalEntryPosition(0), separator);
+                buf.putInt(internalEntryPosition(0) + keyLength, rightBlock);
+                setCount(buf, 1);
+            } finally {
+                diskFileManager.unpinBlock(page, true);
+            }
+            rootBlock = newRoot;
+            return;
+        }
+
+        byte[] entry = new byte[internalEntrySize()];
+        System.arraycopy(separator, 0, entry, 0, keyLength);
+        ByteBuffer.wrap(entry).putInt(keyLength, rightBlock);
+
+        int block = path.pop();
+        Page page = diskFileManager.pinBlock(indexFileName, block);
+        byte[] promoted;
+        int newBlock;
+        try {
+            ByteBuffer buf = page.getBuffer();
+            int count = getCount(buf);
+
+            // 같은 키가 여러 자식에 걸칠 수 있으므로 키가 아니라 왼쪽 자식의 위치로 자리를 찾는다
+            int pos = 0;
+            while (pos < count && buf.getInt(childPosition(pos)) != leftBlock) {
+                pos++;
+            }
+
+            int entriesStart = internalEntryPosition(0);
+            if (count < internalCapacity) {
+                insertEntry(buf, entriesStart, internalEntrySize(), count, pos, entry);
+                return;
+            }
+
+            // 가운데 키는 부모로 올라가고, 그 오른쪽 자식이 새 노드의 첫 자식이 된다
+            byte[] all = withInserted(buf, entriesStart, internalEntrySize(), count, pos, entry);
+            int total = count + 1;
+            int mid = total / 2;
+            int midPosition = mid * internalEntrySize();
+
+            promoted = new byte[keyLength];
+            System.arraycopy(all, midPosition, promoted, 0, keyLength);
+
+            newBlock = allocateNode(INTERNAL);
+            Page right = diskFileManager.pinBlock(indexFileName, newBlock);
+            try {
+                ByteBuffer rightBuf = right.getBuffer();
+                rightBuf.putInt(NODE_HEADER_SIZE, ByteBuffer.wrap(all).getInt(midPosition + keyLength));
+                int restPosition = midPosition + internalEntrySize();
+                rightBuf.put(entriesStart, all, restPosition, all.length - restPosition);
+                setCount(rightBuf, total - mid - 1);
+            } finally {
+                diskFileManager.unpinBlock(right, true);
+            }
+
+            buf.put(entriesStart, all, 0, midPosition);
+            setCount(buf, mid);
+        } finally {
+            diskFileManager.unpinBlock(page, true);
+        }
+
+        insertIntoParent(path, block, promoted, newBlock);
+    }
+
+    // 루트에서 리프까지 내려간다. upper 이면 같은 키들의 오른쪽 끝, 아니면 왼쪽 끝을 찾는다
+    private int findLeaf(byte[] key, boolean upper) throws IOException {
+        int block = rootBlock;
+        while (true) {
+            Page page = diskFileManager.pinBlock(indexFileName, block);
+            try {
+                ByteBuffer buf = page.getBuffer();
+                if (buf.get(TYPE_OFFSET) == LEAF) {
+                    return block;
+                }
+                block = buf.getInt(childPosition(searchInternal(buf, key, upper)));
+            } finally {
+                diskFileManager.unpinBlock(page, false);
+            }
+        }
+    }
+
+    // 리프에서 key 보다 큰(upper) 또는 key 이상인 첫 엔트리 위치
+    private int searchLeaf(ByteBuffer buf, byte[] key, boolean upper) {
+        return search(buf, NODE_HEADER_SIZE, leafEntrySize(), getCount(buf), key, upper);
+    }
+
+    // 내부 노드에서 내려갈 자식 번호 (0 = 첫 자식)
+    private int searchInternal(ByteBuffer buf, byte[] key, boolean upper) {
+        return search(buf, internalEntryPosition(0), internalEntrySize(), getCount(buf), key, upper);
+    }
+
+    private int search(ByteBuffer buf, int start, int entrySize, int count, byte[] key, boolean upper) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int c = ByteUtils.compareKey(buf, start + mid * entrySize, keyLength, key);
+            if (c < 0 || (upper && c == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private RecordPointer readLeafPointer(ByteBuffer buf, int pos) {
+        return ByteUtils.readPointer(buf, NODE_HEADER_SIZE + pos * leafEntrySize() + keyLength);
+    }
+
+    private void insertEntry(ByteBuffer buf, int start, int entrySize, int count, int pos, byte[] entry) {
+        int position = start + pos * entrySize;
+        int tail = (count - pos) * entrySize;
+        if (tail > 0) {
+            byte[] moved = new byte[tail];
+            buf.get(position, moved);
+            buf.put(position + entrySize, moved);
+        }
+        buf.put(position, entry);
+        setCount(buf, count + 1);
+    }
+
+    private void removeEntry(ByteBuffer buf, int start, int entrySize, int count, int pos) {
+        int position = start + pos * entrySize;
+        int tail = (count - pos - 1) * entrySize;
+        if (tail > 0) {
+            byte[] moved = new byte[tail];
+            buf.get(position + entrySize, moved);
+            buf.put(position, moved);
+        }
+        setCount(buf, count - 1);
+    }
+
+    private byte[] withInserted(ByteBuffer buf, int start, int entrySize, int count, int pos, byte[] entry) {
+        byte[] all = new byte[(count + 1) * entrySize];
+        buf.get(start, all, 0, pos * entrySize);
+        System.arraycopy(entry, 0, all, pos * entrySize, entrySize);
+        buf.get(start + pos * entrySize, all, (pos + 1) * entrySize, (count - pos) * entrySize);
+        return all;
+    }
+
+    private int allocateNode(byte type) throws IOException {
+        int block = nextBlock++;
+        Page page = diskFileManager.pinBlock(indexFileName, block);
+        try {
+            ByteBuffer buf = page.getBuffer();
+            buf.put(TYPE_OFFSET, type);
+            setCount(buf, 0);
+            buf.putInt(NEXT_LEAF_OFFSET, NO_BLOCK);
+            buf.putInt(PREV_LEAF_OFFSET, NO_BLOCK);
+        } finally {
+            diskFileManager.unpinBlock(page, true);
+        }
+        return block;
+    }
+
+    private void writeHeader() throws IOException {
+        Page header = diskFileManager.pinBlock(indexFileName, 0);
+        try {
+            ByteBuffer buf = header.getBuffer();
+            buf.putInt(INDEX_MAGIC_OFFSET, INDEX_MAGIC);
+            buf.putInt(ROOT_OFFSET, rootBlock);
+            buf.putInt(NEXT_BLOCK_OFFSET, nextBlock);
+            buf.putShort(KEY_LENGTH_OFFSET, (short) keyLength);
+        } finally {
+            diskFileManager.unpinBlock(header, true);
+        }
+    }
+
+    // 키 길이를 넘는 부분은 버리고 나머지는 0으로 채운다
+    private void writeKey(byte[] dst, byte[] key) {
+        System.arraycopy(key, 0, dst, 0, Math.min(key.length, keyLength));
+    }
+
+    private static byte[] orEmpty(byte[] key) {
+        return key != null ? key : EMPTY_KEY;
+    }
+
+    private static int getCount(ByteBuffer buf) {
+        return buf.getShort(COUNT_OFFSET) & 0xFFFF;
+    }
+
+    private static void setCount(ByteBuffer buf, int count) {
+        buf.putShort(COUNT_OFFSET, (short) count);
+    }
+
+    // 내부 노드의 i번째 자식 포인터 위치 (0 = 첫 자식, i > 0 은 i-1번째 엔트리의 오른쪽 자식)
+    private int childPosition(int i) {
+        return i == 0 ? NODE_HEADER_SIZE : internalEntryPosition(i - 1) + keyLength;
+    }
+
+    private int internalEntryPosition(int i) {
+        return NODE_HEADER_SIZE + CHILD_SIZE + i * internalEntrySize();
+    }
+
+    private int leafEntrySize() {
+        return keyLength + Constants.POINTER_SIZE;
+    }
+
+    private int internalEntrySize() {
+        return keyLength + CHILD_SIZE;
+    }
+}
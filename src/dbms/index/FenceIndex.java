@@ -0,0 +1,130 @@
+package dbms.index;
+
+import dbms.storage.BlockStorage;
+import dbms.util.ByteUtils;
+import dbms.util.RecordPointer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// 키 순서로 빽빽하게 쓴 데이터 파일(일괄 적재나 재구성 직후)의 희소 인덱스. <파일명>.fence 에 저장하고 메모리에 둔다
+// 블록 묶음마다 첫 블록의 0번 슬롯 레코드의 검색 키를 기록한다. 이때는 체인 순서가 블록 순서와 같으므로
+// 범위 검색은 인덱스 파일을 읽지 않고 메모리에서 이진 탐색한 블록부터 시작할 수 있다
+// 레코드를 넣거나 지우면 이 성질이 깨지므로 파일을 지워 무효로 만들고, 다음 일괄 적재나 재구성 때 다시 만든다
+// 엔트리가 MAX_ENTRIES 를 넘으면 묶음 크기를 두 배로 늘려 절반만 남기므로 파일이 커도 크기가 일정하다
+//
+// 파일 형식: [매직 4바이트][묶음 블록 수 4바이트][엔트리 수 4바이트] + 엔트리마다 [블록 4바이트][키 길이 2바이트][키]
+public class FenceIndex {
+    public static final String FILE_SUFFIX = ".fence";
+
+    private static final int MAGIC = 0x44424645; // "DBFE"
+    private static final int FILE_HEADER_SIZE = 12;
+    private static final int MAX_ENTRIES = 1 << 16;
+    private static final byte[] EMPTY_KEY = new byte[0];
+
+    private int groupBlocks = 1;
+    private int count;
+    private int[] blocks = new int[64];
+    private byte[][] keys = new byte[64][];
+
+    // 블록 순서대로 각 블록의 첫 키를 받는다 (null 키는 가장 작은 키)
+    public void add(int blockNumber, byte[] firstKey) {
+        if (count > 0 && (blockNumber - blocks[0]) % groupBlocks != 0) {
+            return;
+        }
+        if (count == MAX_ENTRIES) {
+            // 묶음을 두 배로 늘리고 짝수 번째 엔트리만 남긴다
+            for (int i = 0; i < count / 2; i++) {
+                blocks[i] = blocks[i * 2];
+                keys[i] = keys[i * 2];
+            }
+            count /= 2;
+            groupBlocks *= 2;
+            if ((blockNumber - blocks[0]) % groupBlocks != 0) {
+                return;
+            }
+        }
+        if (count == blocks.length) {
+            blocks = Arrays.copyOf(blocks, count * 2);
+            keys = Arrays.copyOf(keys, count * 2);
+        }
+        blocks[count] = blockNumber;
+        keys[count] = firstKey != null ? firstKey : EMPTY_KEY;
+        count++;
+    }
+
+    // minKey 이상인 레코드를 찾기 시작할 위치: 첫 키가 minKey 보다 작은 마지막 묶음의 첫 레코드
+    // 그보다 앞의 레코드는 모두 minKey 보다 작다. 그런 묶음이 없으면 null (체인 맨 앞부터)
+    public RecordPointer startPointer(byte[] minKey) {
+        if (minKey == null) {
+            return null;
+        }
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ByteUtils.compareKey(ByteBuffer.wrap(keys[mid]), 0, keys[mid].length, minKey) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low > 0 ? new RecordPointer(blocks[low - 1], 0) : null;
+    }
+
+    public int getEntryCount() {
+        return count;
+    }
+
+    // 파일이 없거나 형식이 맞지 않으면 null
+    public static FenceIndex load(BlockStorage storage, String dataFileName) throws IOException {
+        String fileName = dataFileName + FILE_SUFFIX;
+        long size = storage.size(fileName);
+        if (size < FILE_HEADER_SIZE || size > Integer.MAX_VALUE) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        storage.read(fileName, 0, buffer);
+        buffer.flip();
+        if (buffer.getInt() != MAGIC) {
+            return null;
+        }
+
+        FenceIndex fence = new FenceIndex();
+        fence.groupBlocks = buffer.getInt();
+        int entryCount = buffer.getInt();
+        try {
+            for (int i = 0; i < entryCount; i++) {
+                int block = buffer.getInt();
+                byte[] key = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(key);
+                fence.add(block, key);
+            }
+        } catch (RuntimeException e) {
+            // 중간에 잘린 파일
+            return null;
+        }
+        return fence;
+    }
+
+    public void save(BlockStorage storage, String dataFileName) throws IOException {
+        String fileName = dataFileName + FILE_SUFFIX;
+
+        int size = FILE_HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            size += 6 + keys[i].length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC).putInt(groupBlocks).putInt(count);
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(blocks[i]).putShort((short) keys[i].length).put(keys[i]);
+        }
+        buffer.flip();
+
+        storage.truncate(fileName, 0);
+        storage.write(fileName, 0, buffer);
+        storage.force(fileName);
+    }
+}
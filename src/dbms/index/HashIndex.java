@@ -0,0 +1,462 @@
+package dbms.index;
+
+import dbms.DiskFileManager;
+import dbms.storage.Page;
+import dbms.util.ByteUtils;
+import dbms.util.Constants;
+import dbms.util.RecordPointer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// 검색 키가 아닌 필드 값으로 레코드를 찾는 선형 해시 인덱스. <파일명>.<필드명>.hidx 에 저장된다
+// 같은 값이 여러 번 들어갈 수 있으며, 값이 null 인 레코드는 넣지 않는다
+// 엔트리 수가 전체 버킷 용량의 MAX_LOAD 를 넘을 때마다 분할 포인터가 가리키는 버킷 하나만 둘로 나누므로
+// 디렉터리를 한 번에 두 배로 늘리는 일 없이 버킷 수가 조금씩 늘어난다
+// 공개 메서드는 인덱스마다 동기화되어 여러 스레드가 함께 쓸 수 있다
+//
+// 헤더 블록: 데이터 파일과 같은 [0..15] + [16..19] 인덱스 매직, [20..21] 키 길이, [22..25] 단계,
+//           [26..29] 분할 포인터, [30..33] 다음에 할당할 블록, [34..37] 빈 블록 목록, [38..45] 엔트리 수,
+//           [46..49] 첫 디렉터리 블록
+// 디렉터리 블록: [0..3] 다음 디렉터리 블록 + 버킷마다 첫 페이지의 블록 번호 4바이트
+// 버킷 페이지: [0..1] 엔트리 수, [2..5] 오버플로 페이지, 엔트리 = [키][레코드 포인터 6바이트]
+public class HashIndex {
+    public static final String FILE_SUFFIX = ".hidx";
+    public static final int INDEX_MAGIC = 0x44424858; // "DBHX"
+
+    private static final int INDEX_MAGIC_OFFSET = 16;
+    private static final int KEY_LENGTH_OFFSET = 20;
+    private static final int LEVEL_OFFSET = 22;
+    private static final int SPLIT_OFFSET = 26;
+    private static final int NEXT_BLOCK_OFFSET = 30;
+    private static final int FREE_BLOCK_OFFSET = 34;
+    private static final int ENTRY_COUNT_OFFSET = 38;
+    private static final int DIRECTORY_OFFSET = 46;
+
+    private static final int COUNT_OFFSET = 0;
+    private static final int OVERFLOW_OFFSET = 2;
+    private static final int PAGE_HEADER_SIZE = 6;
+    private static final int DIRECTORY_HEADER_SIZE = 4;
+    private static final int BLOCK_SIZE = 4;
+    private static final int NO_BLOCK = -1;
+
+    private static final int INITIAL_BUCKETS = 4; // 2의 거듭제곱이어야 한다
+    private static final double MAX_LOAD = 0.75;
+    private static final int MIN_CAPACITY = 4;    // 버킷 페이지당 최소 엔트리 수
+
+    private final DiskFileManager diskFileManager;
+    private final String indexFileName;
+    private final int keyLength;
+    private final int capacity;             // 버킷 페이지당 엔트리 수
+    private final int directoryCapacity;    // 디렉터리 블록당 버킷 수
+
+    private int level;          // 분할 전 버킷 수 = INITIAL_BUCKETS << level
+    private int split;          // 다음에 나눌 버킷
+    private int nextBlock;
+    private int freeBlock;      // 분할 뒤 남은 페이지의 목록 (오버플로 칸으로 연결)
+    private long entryCount;
+    private List<Integer> directoryBlocks = new ArrayList<>();
+    private int[] buckets = new int[INITIAL_BUCKETS];
+
+    private HashIndex(DiskFileManager diskFileManager, String indexFileName, int keyLength, int pageSize) {
+        this.diskFileManager = diskFileManager;
+        this.indexFileName = indexFileName;
+        this.keyLength = keyLength;
+        this.capacity = (pageSize - PAGE_HEADER_SIZE) / entrySize(keyLength);
+        this.directoryCapacity = (pageSize - DIRECTORY_HEADER_SIZE) / BLOCK_SIZE;
+    }
+
+    public static String getFileName(String fileName, String fieldName) {
+        return fileName + "." + fieldName + FILE_SUFFIX;
+    }
+
+    // 빈 인덱스를 만든다. 페이지 크기는 데이터 파일과 같게 하되, 키가 길면 페이지에 여러 엔트리가 들어가도록 키운다
+    public static HashIndex create(DiskFileManager diskFileManager, String fileName, String fieldName,
+                                   int keyLength) throws IOException {
+        int pageSize = diskFileManager.getPageSize(fileName);
+        while (pageSize - PAGE_HEADER_SIZE < MIN_CAPACITY * entrySize(keyLength)) {
+            pageSize *= 2;
+            if (pageSize > Constants.MAX_PAGE_SIZE) {
+                throw new IllegalArgumentException("필드가 너무 길어 인덱스를 만들 수 없습니다: " + keyLength + "바이트");
+            }
+        }
+
+        String indexFileName = getFileName(fileName, fieldName);
+        diskFileManager.createFile(indexFileName, pageSize);
+
+        HashIndex index = new HashIndex(diskFileManager, indexFileName, keyLength, pageSize);
+        index.initBuckets();
+        return index;
+    }
+
+    // 기존 인덱스 파일을 열고 디렉터리를 메모리에 올린다. 없으면 null
+    public static HashIndex open(DiskFileManager diskFileManager, String fileName, String fieldName) throws IOException {
+        String indexFileName = getFileName(fileName, fieldName);
+        if (!diskFileManager.exists(indexFileName)) {
+            return null;
+        }
+
+        HashIndex index;
+        int directoryBlock;
+        Page header = diskFileManager.pinBlock(indexFileName, 0);
+        try {
+            ByteBuffer buf = header.getBuffer();
+            if (buf.getInt(INDEX_MAGIC_OFFSET) != INDEX_MAGIC) {
+                throw new IOException("해시 인덱스 파일이 아닙니다: " + indexFileName);
+            }
+            index = new HashIndex(diskFileManager, indexFileName, buf.getShort(KEY_LENGTH_OFFSET) & 0xFFFF,
+                    diskFileManager.getPageSize(indexFileName));
+            index.level = buf.getInt(LEVEL_OFFSET);
+            index.split = buf.getInt(SPLIT_OFFSET);
+            index.nextBlock = buf.getInt(NEXT_BLOCK_OFFSET);
+            index.freeBlock = buf.getInt(FREE_BLOCK_OFFSET);
+            index.entryCount = buf.getLong(ENTRY_COUNT_OFFSET);
+            directoryBlock = buf.getInt(DIRECTORY_OFFSET);
+        } finally {
+            diskFileManager.unpinBlock(header, false);
+        }
+
+        int bucketCount = index.getBucketCount();
+        index.buckets = new int[Math.max(INITIAL_BUCKETS, bucketCount)];
+        for (int bucket = 0; bucket < bucketCount; bucket += index.directoryCapacity) {
+            index.directoryBlocks.add(directoryBlock);
+            Page page = diskFileManager.pinBlock(indexFileName, directoryBlock);
+            try {
+                ByteBuffer buf = page.getBuffer();
+                int end = Math.min(bucketCount, bucket + index.directoryCapacity);
+                for (int i = bucket; i < end; i++) {
+                    index.buckets[i] = buf.getInt(DIRECTORY_HEADER_SIZE + (i - bucket) * BLOCK_SIZE);
+                }
+                directoryBlock = buf.getInt(0);
+            } finally {
+                diskFileManager.unpinBlock(page, false);
+            }
+        }
+        return index;
+    }
+
+    // 모든 엔트리를 지우고 처음 버킷들만 남긴다
+    public synchronized void clear() throws IOException {
+        diskFileManager.createFile(indexFileName, diskFileManager.getPageSize(indexFileName));
+        initBuckets();
+    }
+
+    private void initBuckets() throws IOException {
+        level = 0;
+        split = 0;
+        nextBlock = 1;
+        freeBlock = NO_BLOCK;
+        entryCount = 0;
+        directoryBlocks.clear();
+        buckets = new int[INITIAL_BUCKETS];
+        for (int bucket = 0; bucket < INITIAL_BUCKETS; bucket++) {
+            setBucketBlock(bucket, allocateBlock());
+        }
+        writeHeader();
+    }
+
+    public synchronized long getEntryCount() {
+        return entryCount;
+    }
+
+    // 키는 Schema.encodeKey 로 인코딩한 바이트이며, 뒤쪽의 0 은 무시하고 비교한다
+
+    // key 인 엔트리의 레코드 포인터들. 버킷 하나의 페이지만 읽는다
+    public synchronized List<RecordPointer> search(byte[] key) throws IOException {
+        List<RecordPointer> pointers = new ArrayList<>();
+        int block = buckets[bucketOf(key)];
+
+        while (block != NO_BLOCK) {
+            Page page = diskFileManager.pinBlock(indexFileName, block);
+            try {
+                ByteBuffer buf = page.getBuffer();
+                int count = getCount(buf);
+                for (int i = 0; i < count; i++) {
+                    int position = entryPosition(i);
+                    if (ByteUtils.compareKey(buf, position, keyLength, key) == 0) {
+                        pointers.add(ByteUtils.readPointer(buf, position + keyLength));
+                    }
+                }
+                block = buf.getInt(OVERFLOW_OFFSET);
+            } finally {
+                diskFileManager.unpinBlock(page, false);
+            }
+        }
+        return pointers;
+    }
+
+    public synchronized void insert(byte[] key, RecordPointer pointer) throws IOException {
+        byte[] entry = new byte[entrySize(keyLength)];
+        System.arraycopy(key, 0, entry, 0, Math.min(key.length, keyLength));
+        ByteUtils.writePointer(ByteBuffer.wrap(entry), keyLength, pointer);
+
+        // 자리가 있는 첫 페이지에 넣고, 모두 차 있으면 오버플로 페이지를 잇는다
+        int block = buckets[bucketOf(key)];
+        while (true) {
+            Page page = diskFileManager.pinBlock(indexFileName, block);
+            try {
+                ByteBuffer buf = page.getBuffer();
+                int count = getCount(buf);
+                if (count < capacity) {
+                    buf.put(entryPosition(count), entry);
+                    setCount(buf, count + 1);
+                    break;
+                }
+                int overflow = buf.getInt(OVERFLOW_OFFSET);
+                if (overflow == NO_BLOCK) {
+                    overflow = allocateBlock();
+                    buf.putInt(OVERFLOW_OFFSET, overflow);
+                }
+                block = overflow;
+            } finally {
+                diskFileManager.unpinBlock(page, true);
+            }
+        }
+
+        entryCount++;
+        if (entryCount > MAX_LOAD * getBucketCount() * capacity) {
+            splitBucket();
+        }
+        writeHeader();
+    }
+
+    // key 와 pointer 가 모두 같은 엔트리를 지운다. 지웠으면 true
+    // 페이지의 마지막 엔트리를 빈자리로 옮기며, 비게 된 오버플로 페이지는 그 버킷이 다음에 나뉠 때 회수된다
+    public synchronized boolean delete(byte[] key, RecordPointer pointer) throws IOException {
+        int block = buckets[bucketOf(key)];
+
+        while (block != NO_BLOCK) {
+            Page page = diskFileManager.pinBlock(indexFileName, block);
+            boolean removed = false;
+            try {
+                ByteBuffer buf = page.getBuffer();
+                int count = getCount(buf);
+                for (int i = 0; i < count && !removed; i++) {
+                    int position = entryPosition(i);
+                    if (ByteUtils.compareKey(buf, position, keyLength, key) == 0
+                            && pointer.equals(ByteUtils.readPointer(buf, position + keyLength))) {
+                        if (i < count - 1) {
+                            byte[] last = new byte[entrySize(keyLength)];
+                            buf.get(entryPosition(count - 1), last);
+                            buf.put(position, last);
+                        }
+                        setCount(buf, count - 1);
+                        removed = true;
+                    }
+                }
+                block = buf.getInt(OVERFLOW_OFFSET);
+            } finally {
+                diskFileManager.unpinBlock(page, removed);
+            }
+
+            if (removed) {
+                entryCount--;
+                writeHeader();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 분할 포인터의 버킷을 다음 단계의 해시로 다시 나눠 절반을 새 버킷으로 옮긴다
+    // 기존 페이지를 다시 쓰고, 모자라면 새로 할당하며, 남은 페이지는 빈 블록 목록에 넣는다
+    private void splitBucket() throws IOException {
+        int oldBucket = split;
+        int newBucket = getBucketCount();
+        int mask = (INITIAL_BUCKETS << (level + 1)) - 1;
+
+        List<Integer> pages = new ArrayList<>();
+        List<byte[]> staying = new ArrayList<>();
+        List<byte[]> moving = new ArrayList<>();
+        int block = buckets[oldBucket];
+        while (block != NO_BLOCK) {
+            pages.add(block);
+            Page page = diskFileManager.pinBlock(indexFileName, block);
+            try {
+                ByteBuffer buf = page.getBuffer();
+                int count = getCount(buf);
+                for (int i = 0; i < count; i++) {
+                    byte[] entry = new byte[entrySize(keyLength)];
+                    buf.get(entryPosition(i), entry);
+                    (bucketOf(entry, keyLength, mask) == oldBucket ? staying : moving).add(entry);
+                }
+                block = buf.getInt(OVERFLOW_OFFSET);
+            } finally {
+                diskFileManager.unpinBlock(page, false);
+            }
+        }
+
+        // 첫 페이지는 그대로 oldBucket 의 첫 페이지로 남는다
+        writeChain(staying, pages);
+        setBucketBlock(newBucket, writeChain(moving, pages));
+        for (int page : pages) {
+            releaseBlock(page);
+        }
+
+        split++;
+        if (split == INITIAL_BUCKETS << level) {
+            level++;
+            split = 0;
+        }
+    }
+
+    // entries 를 페이지들에 나눠 쓰고 첫 페이지의 블록 번호를 돌려준다. 페이지는 spare 앞에서부터 가져다 쓴다
+    private int writeChain(List<byte[]> entries, List<Integer> spare) throws IOException {
+        int pageCount = Math.max(1, (entries.size() + capacity - 1) / capacity);
+        int[] blocks = new int[pageCount];
+        for (int i = 0; i < pageCount; i++) {
+            blocks[i] = spare.isEmpty() ? allocateBlock() : spare.remove(0);
+        }
+
+        for (int i = 0; i < pageCount; i++) {
+            Page page = diskFileManager.pinBlock(indexFileName, blocks[i]);
+            try {
+                ByteBuffer buf = page.getBuffer();
+                int from = i * capacity;
+                int to = Math.min(entries.size(), from + capacity);
+                for (int j = from; j < to; j++) {
+                    buf.put(entryPosition(j - from), entries.get(j));
+                }
+                setCount(buf, to - from);
+                buf.putInt(OVERFLOW_OFFSET, i + 1 < pageCount ? blocks[i + 1] : NO_BLOCK);
+            } finally {
+                diskFileManager.unpinBlock(page, true);
+            }
+        }
+        return blocks[0];
+    }
+
+    private int getBucketCount() {
+        return (INITIAL_BUCKETS << level) + split;
+    }
+
+    // 아직 나뉘지 않은 버킷은 이번 단계의 해시로, 이미 나뉜 버킷은 다음 단계의 해시로 찾는다
+    private int bucketOf(byte[] key) {
+        int mask = (INITIAL_BUCKETS << level) - 1;
+        int bucket = bucketOf(key, key.length, mask);
+        if (bucket < split) {
+            bucket = bucketOf(key, key.length, (mask << 1) | 1);
+        }
+        return bucket;
+    }
+
+    // 뒤쪽의 0 을 빼고 해시하므로 0으로 채운 저장 키와 채우지 않은 검색 키가 같은 버킷으로 간다
+    private static int bucketOf(byte[] key, int length, int mask) {
+        while (length > 0 && key[length - 1] == 0) {
+            length--;
+        }
+        int hash = 0x811C9DC5;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ (key[i] & 0xFF)) * 0x01000193;
+        }
+        // 아래쪽 비트만 쓰므로 위쪽 비트를 섞어 내린다
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        return hash & mask;
+    }
+
+    private void setBucketBlock(int bucket, int block) throws IOException {
+        if (bucket >= buckets.length) {
+            buckets = Arrays.copyOf(buckets, buckets.length * 2);
+        }
+        buckets[bucket] = block;
+
+        int directoryIndex = bucket / directoryCapacity;
+        if (directoryIndex == directoryBlocks.size()) {
+            int directoryBlock = allocateBlock();
+            Page page = diskFileManager.pinBlock(indexFileName, directoryBlock);
+            try {
+                page.getBuffer().putInt(0, NO_BLOCK);
+            } finally {
+                diskFileManager.unpinBlock(page, true);
+            }
+            if (directoryIndex > 0) {
+                Page previous = diskFileManager.pinBlock(indexFileName, directoryBlocks.get(directoryIndex - 1));
+                try {
+                    previous.getBuffer().putInt(0, directoryBlock);
+                } finally {
+                    diskFileManager.unpinBlock(previous, true);
+                }
+            }
+            directoryBlocks.add(directoryBlock);
+        }
+
+        Page page = diskFileManager.pinBlock(indexFileName, directoryBlocks.get(directoryIndex));
+        try {
+            page.getBuffer().putInt(DIRECTORY_HEADER_SIZE + (bucket % directoryCapacity) * BLOCK_SIZE, block);
+        } finally {
+            diskFileManager.unpinBlock(page, true);
+        }
+    }
+
+    // 빈 블록 목록에서 꺼내거나 파일 끝에 새로 잡은 빈 버킷 페이지
+    private int allocateBlock() throws IOException {
+        int block;
+        Page page;
+        if (freeBlock != NO_BLOCK) {
+            block = freeBlock;
+            page = diskFileManager.pinBlock(indexFileName, block);
+            freeBlock = page.getBuffer().getInt(OVERFLOW_OFFSET);
+        } else {
+            block = nextBlock++;
+            page = diskFileManager.pinBlock(indexFileName, block);
+        }
+        try {
+            ByteBuffer buf = page.getBuffer();
+            setCount(buf, 0);
+            buf.putInt(OVERFLOW_OFFSET, NO_BLOCK);
+        } finally {
+            diskFileManager.unpinBlock(page, true);
+        }
+        return block;
+    }
+
+    private void releaseBlock(int block) throws IOException {
+        Page page = diskFileManager.pinBlock(indexFileName, block);
+        try {
+            ByteBuffer buf = page.getBuffer();
+            setCount(buf, 0);
+            buf.putInt(OVERFLOW_OFFSET, freeBlock);
+        } finally {
+            diskFileManager.unpinBlock(page, true);
+        }
+        freeBlock = block;
+    }
+
+    private void writeHeader() throws IOException {
+        Page header = diskFileManager.pinBlock(indexFileName, 0);
+        try {
+            ByteBuffer buf = header.getBuffer();
+            buf.putInt(INDEX_MAGIC_OFFSET, INDEX_MAGIC);
+            buf.putShort(KEY_LENGTH_OFFSET, (short) keyLength);
+            buf.putInt(LEVEL_OFFSET, level);
+            buf.putInt(SPLIT_OFFSET, split);
+            buf.putInt(NEXT_BLOCK_OFFSET, nextBlock);
+            buf.putInt(FREE_BLOCK_OFFSET, freeBlock);
+            buf.putLong(ENTRY_COUNT_OFFSET, entryCount);
+            buf.putInt(DIRECTORY_OFFSET, directoryBlocks.isEmpty() ? NO_BLOCK : directoryBlocks.get(0));
+        } finally {
+            diskFileManager.unpinBlock(header, true);
+        }
+    }
+
+    private static int getCount(ByteBuffer buf) {
+        return buf.getShort(COUNT_OFFSET) & 0xFFFF;
+    }
+
+    private static void setCount(ByteBuffer buf, int count) {
+        buf.putShort(COUNT_OFFSET, (short) count);
+    }
+
+    private int entryPosition(int i) {
+        return PAGE_HEADER_SIZE + i * entrySize(keyLength);
+    }
+
+    private static int entrySize(int keyLength) {
+        return keyLength + Constants.POINTER_SIZE;
+    }
+}
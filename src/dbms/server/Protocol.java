@@ -0,0 +1,93 @@
+package dbms.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// 질의 서버와 클라이언트가 주고받는 줄 단위 프로토콜 (UTF-8)
+//
+// 요청: 한 줄에 명령과 인자를 탭으로 나눠 쓴다
+//   CREATE  파일명  페이지크기(빈 값이면 기본)  필드(이름:타입:길이)...
+//   LOAD    파일명  데이터 파일 (리소스 디렉터리 기준)
+//   INSERT  파일명  값...
+//   FIELD   파일명  필드명
+//   RANGE   파일명  최소 키  최대 키 (빈 값이면 제한 없음)
+//   EQUAL   파일명  필드명  값
+//   QUIT
+// 응답: 결과 행마다 "ROW 값..." 한 줄을 보내고, 마지막에 "OK 행 수" 나 "ERR 메시지" 한 줄로 끝난다
+// 값 안의 역슬래시, 탭, 줄바꿈은 \\, \t, \n 으로 바꾸고 null 은 \N 으로 보낸다
+final class Protocol {
+    static final String ROW = "ROW";
+    static final String OK = "OK";
+    static final String ERR = "ERR";
+    static final String QUIT = "QUIT";
+
+    private static final char SEPARATOR = '\t';
+    private static final String NULL = "\\N";
+
+    private Protocol() {
+    }
+
+    static String join(String command, List<String> values) {
+        StringBuilder line = new StringBuilder(command);
+        for (String value : values) {
+            line.append(SEPARATOR).append(escape(value));
+        }
+        return line.toString();
+    }
+
+    // 명령과 인자로 나눈다. 첫 원소가 명령이다
+    static List<String> split(String line) {
+        List<String> values = new ArrayList<>();
+        int start = 0;
+        while (true) {
+            int end = line.indexOf(SEPARATOR, start);
+            values.add(unescape(line.substring(start, end < 0 ? line.length() : end)));
+            if (end < 0) {
+                return values;
+            }
+            start = end + 1;
+        }
+    }
+
+    static String escape(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        StringBuilder escaped = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String replacement = c == '\\' ? "\\\\" : c == '\t' ? "\\t" : c == '\n' ? "\\n" : c == '\r' ? "\\r" : null;
+            if (replacement != null && escaped == null) {
+                escaped = new StringBuilder(value.length() + 8).append(value, 0, i);
+            }
+            if (escaped != null) {
+                if (replacement != null) {
+                    escaped.append(replacement);
+                } else {
+                    escaped.append(c);
+                }
+            }
+        }
+        return escaped != null ? escaped.toString() : value;
+    }
+
+    static String unescape(String value) {
+        if (NULL.equals(value)) {
+            return null;
+        }
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder unescaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                unescaped.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+}
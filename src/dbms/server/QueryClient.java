@@ -0,0 +1,172 @@
+package dbms.server;
+
+import dbms.util.ByteUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// QueryServer 의 클라이언트. 한 연결에서 요청을 차례로 보낸다 (여러 스레드가 함께 쓰면 안 된다)
+//
+// 실행: QueryClient [호스트] [포트]
+//       표준 입력의 한 줄을 요청 하나로 보낸다. 인자는 탭으로 나누며, 탭이 없는 줄은 공백으로 나눈다 (null 값은 \N)
+//       QueryClient 호스트 포트 --bench 클라이언트수 초 명령 인자...
+//       클라이언트마다 연결 하나로 같은 요청을 정해진 시간 동안 되풀이하고 처리량을 출력한다
+public class QueryClient implements AutoCloseable {
+    private final Socket socket;
+    private final BufferedReader in;
+    private final BufferedWriter out;
+
+    public QueryClient(String host, int port) throws IOException {
+        this.socket = new Socket(host, port);
+        this.socket.setTcpNoDelay(true);
+        this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), ByteUtils.CHARSET));
+        this.out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), ByteUtils.CHARSET));
+    }
+
+    // 요청 하나를 보내고 결과 행을 받는 대로 rowHandler 에 넘긴다. 서버가 센 행 수를 돌려준다
+    // 서버가 ERR 로 답하면 IOException 이지만 연결은 계속 쓸 수 있다
+    public long execute(Consumer<List<String>> rowHandler, String command, String... args) throws IOException {
+        out.write(Protocol.join(command, Arrays.asList(args)));
+        out.write('\n');
+        out.flush();
+
+        String line;
+        while ((line = in.readLine()) != null) {
+            List<String> response = Protocol.split(line);
+            String type = response.get(0);
+            if (Protocol.ROW.equals(type)) {
+                rowHandler.accept(response.subList(1, response.size()));
+            } else if (Protocol.OK.equals(type)) {
+                return response.size() > 1 ? Long.parseLong(response.get(1)) : 0;
+            } else if (Protocol.ERR.equals(type)) {
+                throw new IOException("서버 오류: " + (response.size() > 1 ? response.get(1) : ""));
+            } else {
+                throw new IOException("알 수 없는 응답입니다: " + line);
+            }
+        }
+        throw new EOFException("서버가 연결을 끊었습니다.");
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out.write(Protocol.QUIT);
+            out.write('\n');
+            out.flush();
+        } catch (IOException e) {
+            // 이미 끊긴 연결
+        }
+        socket.close();
+    }
+
+    public static void main(String[] args) {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : QueryServer.DEFAULT_PORT;
+
+        try {
+            if (args.length > 5 && "--bench".equals(args[2])) {
+                bench(host, port, Integer.parseInt(args[3]), Integer.parseInt(args[4]),
+                        args[5], Arrays.copyOfRange(args, 6, args.length));
+            } else {
+                interactive(host, port);
+            }
+        } catch (IOException e) {
+            System.err.println("서버 연결 오류: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void interactive(String host, int port) throws IOException {
+        BufferedReader console = new BufferedReader(new InputStreamReader(System.in, ByteUtils.CHARSET));
+        try (QueryClient client = new QueryClient(host, port)) {
+            String line;
+            while ((line = console.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (Protocol.QUIT.equalsIgnoreCase(line)) {
+                    break;
+                }
+
+                // 입력한 \N, \t 등은 Protocol 과 같은 뜻으로 읽는다
+                List<String> request = new ArrayList<>();
+                for (String token : line.indexOf('\t') >= 0 ? line.split("\t", -1) : line.split("\\s+")) {
+                    request.add(Protocol.unescape(token));
+                }
+                String command = request.remove(0);
+                try {
+                    long count = client.execute(row -> System.out.println(String.join(" | ", nullsAsText(row))),
+                            command, request.toArray(new String[0]));
+                    System.out.println("(" + count + ")");
+                } catch (EOFException e) {
+                    throw e;
+                } catch (IOException e) {
+                    System.err.println(e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static List<String> nullsAsText(List<String> row) {
+        List<String> values = new ArrayList<>(row.size());
+        for (String value : row) {
+            values.add(value == null ? "null" : value);
+        }
+        return values;
+    }
+
+    // 클라이언트마다 스레드와 연결 하나로 같은 요청을 되풀이한다
+    private static void bench(String host, int port, int clientCount, int seconds, String command, String[] args)
+            throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        AtomicLong queries = new AtomicLong();
+        AtomicLong rows = new AtomicLong();
+        AtomicLong failures = new AtomicLong();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < clientCount; i++) {
+            QueryClient client = new QueryClient(host, port);
+            threads.add(new Thread(() -> {
+                try (client) {
+                    while (System.nanoTime() < deadline) {
+                        try {
+                            rows.addAndGet(client.execute(row -> { }, command, args));
+                            queries.incrementAndGet();
+                        } catch (EOFException e) {
+                            throw e;
+                        } catch (IOException e) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                } catch (IOException e) {
+                    System.err.println("클라이언트 오류: " + e.getMessage());
+                }
+            }));
+        }
+
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("클라이언트 %d개, %.1f초: 요청 %d건 (%.0f건/초), 결과 행 %d개 (%.0f행/초), 실패 %d건%n",
+                clientCount, elapsed, queries.get(), queries.get() / elapsed, rows.get(), rows.get() / elapsed,
+                failures.get());
+    }
+}
@@ -0,0 +1,266 @@
+package dbms.server;
+
+import dbms.Catalog;
+import dbms.ChainCursor;
+import dbms.FieldType;
+import dbms.Record;
+import dbms.RecordManager;
+import dbms.Schema;
+import dbms.util.ByteUtils;
+import dbms.util.Constants;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// 루프백 주소에서 Protocol 형식의 요청을 받아 처리하는 질의 서버
+// 연결마다 스레드 하나가 요청을 차례로 처리한다. 검색 결과는 메모리에 모았다가 커서를 닫은 뒤 보내므로
+// 느린 클라이언트가 스냅숏을 오래 붙잡지 않는다. 결과가 RESULT_BUFFER_SIZE 를 넘으면 그만큼씩 먼저 보낸다
+public class QueryServer implements AutoCloseable {
+    public static final int DEFAULT_PORT = 5480;
+
+    // 커서를 연 채로 보내기 전에 메모리에 모으는 응답의 최대 글자 수
+    private static final int RESULT_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private final RecordManager recordManager;
+    private final Catalog catalog;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+    private volatile boolean closed;
+
+    public QueryServer(RecordManager recordManager, Catalog catalog, int port) throws IOException {
+        this.recordManager = recordManager;
+        this.catalog = catalog;
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        this.connections = newConnectionExecutor();
+    }
+
+    // 연결마다 스레드 하나. 가상 스레드를 쓸 수 있는 JDK 면 가상 스레드를, 아니면 필요한 만큼 늘어나는 스레드 풀을 쓴다
+    private static ExecutorService newConnectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    // close 가 불릴 때까지 연결을 받는다
+    public void serve() throws IOException {
+        System.out.println("질의 서버 시작: " + serverSocket.getLocalSocketAddress());
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                if (closed) {
+                    return;
+                }
+                throw e;
+            }
+            connections.execute(() -> handle(socket));
+        }
+    }
+
+    // 새 연결을 받지 않고, 처리 중인 연결이 끝나기를 잠시 기다린 뒤 끊는다
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        connections.shutdown();
+        try {
+            if (!connections.awaitTermination(5, TimeUnit.SECONDS)) {
+                connections.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            connections.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), ByteUtils.CHARSET));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), ByteUtils.CHARSET))) {
+            String line;
+            while (!closed && (line = in.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                List<String> request = Protocol.split(line);
+                if (Protocol.QUIT.equalsIgnoreCase(request.get(0))) {
+                    break;
+                }
+                execute(request, out);
+                out.flush();
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                System.err.println("연결 처리 중 오류 발생: " + e.getMessage());
+            }
+        }
+    }
+
+    // 요청 하나를 처리하고 응답을 끝까지 쓴다. 요청이 잘못되었거나 처리에 실패하면 ERR 로 답하고 연결은 유지한다
+    private void execute(List<String> request, Writer out) throws IOException {
+        StringBuilder rows = new StringBuilder();
+        long count;
+        try {
+            String command = request.get(0);
+            if (command == null || command.trim().isEmpty()) {
+                throw new IllegalArgumentException("명령이 없습니다.");
+            }
+            List<String> args = request.subList(1, request.size());
+            switch (command.toUpperCase()) {
+                case "CREATE":
+                    count = create(args);
+                    break;
+                case "LOAD":
+                    requireArgs(args, 2);
+                    recordManager.bulkInsertRecords(args.get(0), Constants.RESOURCE_DIRECTORY + args.get(1));
+                    count = 0;
+                    break;
+                case "INSERT":
+                    requireArgs(args, 2);
+                    recordManager.insert(args.get(0), new Record(new ArrayList<>(args.subList(1, args.size())),
+                            requireSchema(args.get(0))));
+                    count = 1;
+                    break;
+                case "FIELD":
+                    requireArgs(args, 2);
+                    try (ChainCursor<String> cursor = recordManager.searchField(args.get(0), args.get(1))) {
+                        count = 0;
+                        while (cursor.hasNext()) {
+                            addRow(rows, out, Collections.singletonList(cursor.next()));
+                            count++;
+                        }
+                    }
+                    break;
+                case "RANGE":
+                    requireArgs(args, 3);
+                    try (ChainCursor<Record> cursor = recordManager.searchRecords(args.get(0),
+                            emptyToNull(args.get(1)), emptyToNull(args.get(2)))) {
+                        count = addRecords(rows, out, cursor);
+                    }
+                    break;
+                case "EQUAL":
+                    requireArgs(args, 3);
+                    try (Stream<Record> records = recordManager.searchEqual(args.get(0), args.get(1), args.get(2))) {
+                        count = addRecords(rows, out, records.iterator());
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("알 수 없는 명령입니다: " + request.get(0));
+            }
+        } catch (UncheckedIOException e) {
+            writeError(out, e.getCause());
+            return;
+        } catch (RuntimeException | SQLException e) {
+            // 처리 중의 예외는 그 요청만 실패시키고 연결은 유지한다
+            writeError(out, e);
+            return;
+        } catch (IOException e) {
+            // 데이터 파일 오류는 응답으로 돌려주고, 소켓 오류는 연결을 끊는다
+            if (e instanceof SocketException) {
+                throw e;
+            }
+            writeError(out, e);
+            return;
+        }
+        out.append(rows);
+        out.write(Protocol.OK + "\t" + count + "\n");
+    }
+
+    // CREATE 파일명 페이지크기 이름:타입:길이...  (숫자와 날짜 타입은 길이를 생략할 수 있다)
+    private long create(List<String> args) throws IOException, SQLException {
+        requireArgs(args, 3);
+        String fileName = args.get(0);
+        String pageSizeValue = args.get(1).trim();
+        int pageSize = pageSizeValue.isEmpty() ? Constants.DEFAULT_PAGE_SIZE : Integer.parseInt(pageSizeValue);
+
+        List<String> fieldNames = new ArrayList<>();
+        List<FieldType> fieldTypes = new ArrayList<>();
+        List<Integer> fieldLengths = new ArrayList<>();
+        for (String field : args.subList(2, args.size())) {
+            String[] parts = field.split(":");
+            FieldType fieldType = FieldType.fromString(parts.length > 1 ? parts[1] : null);
+            fieldNames.add(parts[0].trim());
+            fieldTypes.add(fieldType);
+            fieldLengths.add(parts.length > 2 ? Integer.parseInt(parts[2].trim()) : fieldType.getStorageLength(0));
+        }
+
+        recordManager.createTable(fileName, new Schema(fieldNames, fieldTypes, fieldLengths), pageSize);
+        return 0;
+    }
+
+    private Schema requireSchema(String fileName) throws SQLException {
+        Schema schema = catalog.getSchema(fileName);
+        if (schema == null) {
+            throw new IllegalArgumentException("파일이 존재하지 않습니다: " + fileName);
+        }
+        return schema;
+    }
+
+    private static void requireArgs(List<String> args, int count) {
+        if (args.size() < count) {
+            throw new IllegalArgumentException("인자가 부족합니다: " + count + "개 이상 필요");
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    private static long addRecords(StringBuilder rows, Writer out, Iterator<Record> records) throws IOException {
+        long count = 0;
+        List<String> values = new ArrayList<>();
+        while (records.hasNext()) {
+            Record record = records.next();
+            values.clear();
+            for (int i = 0; i < record.getFieldCount(); i++) {
+                values.add(record.getFieldValue(i));
+            }
+            addRow(rows, out, values);
+            count++;
+        }
+        return count;
+    }
+
+    // 결과 행을 rows 에 모은다. 모은 응답이 RESULT_BUFFER_SIZE 를 넘을 때만 커서를 연 채로 보낸다
+    private static void addRow(StringBuilder rows, Writer out, List<String> values) throws IOException {
+        rows.append(Protocol.join(Protocol.ROW, values)).append('\n');
+        if (rows.length() >= RESULT_BUFFER_SIZE) {
+            out.append(rows);
+            rows.setLength(0);
+        }
+    }
+
+    // 메시지가 없는 예외는 예외 이름으로 답한다
+    private static void writeError(Writer out, Throwable error) throws IOException {
+        String message = error.getMessage() != null ? error.getMessage() : error.toString();
+        out.write(Protocol.join(Protocol.ERR, List.of(message)));
+        out.write('\n');
+    }
+}
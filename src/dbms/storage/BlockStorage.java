@@ -0,0 +1,26 @@
+package dbms.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// 데이터 파일의 물리적 입출력을 담당하는 저장소 백엔드
+public interface BlockStorage {
+    void read(String fileName, long position, ByteBuffer dst) throws IOException;
+
+    void write(String fileName, long position, ByteBuffer src) throws IOException;
+
+    long size(String fileName) throws IOException;
+
+    void truncate(String fileName, long size) throws IOException;
+
+    void force(String fileName) throws IOException;
+
+    void closeFile(String fileName) throws IOException;
+
+    // source 파일의 이름을 target 으로 바꾼다. target 이 있으면 원자적으로 대체한다
+    void rename(String source, String target) throws IOException;
+
+    void delete(String fileName) throws IOException;
+
+    void close() throws IOException;
+}
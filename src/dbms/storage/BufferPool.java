@@ -0,0 +1,263 @@
+package dbms.storage;
+
+import dbms.util.Constants;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 모든 파일이 공유하는 버퍼 풀. clock 교체 정책과 지연 쓰기(write-back)를 사용한다
+// 여러 스레드가 함께 쓸 수 있다. 한 페이지 내용에 대한 동시 접근은 호출한 쪽(DiskFileManager 의 블록 래치)이 막는다
+public class BufferPool {
+    public static final int DEFAULT_FRAME_COUNT = 256;
+
+    private final BlockStorage storage;
+    private final WriteAheadLog log; // 없으면 null
+    private final Page[] frames;
+    private final Map<PageKey, Page> pageTable = new ConcurrentHashMap<>();
+
+    // 버퍼에만 존재하는(아직 디스크에 쓰이지 않은) 블록까지 포함한 파일별 블록 수
+    private final Map<String, Integer> blockCounts = new ConcurrentHashMap<>();
+    private int clockHand;
+
+    private static final class PageKey {
+        private final String fileName;
+        private final int blockNumber;
+
+        private PageKey(String fileName, int blockNumber) {
+            this.fileName = fileName;
+            this.blockNumber = blockNumber;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof PageKey)) return false;
+            PageKey other = (PageKey) o;
+            return blockNumber == other.blockNumber && fileName.equals(other.fileName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fileName, blockNumber);
+        }
+    }
+
+    public BufferPool(BlockStorage storage, int frameCount) {
+        this(storage, frameCount, null);
+    }
+
+    // 로그가 있으면 페이지를 디스크에 쓰기 전에 그 페이지를 기록한 로그 레코드까지 먼저 내린다
+    public BufferPool(BlockStorage storage, int frameCount, WriteAheadLog log) {
+        if (frameCount < 1) {
+            throw new IllegalArgumentException("버퍼 프레임 수는 1 이상이어야 합니다: " + frameCount);
+        }
+        this.storage = storage;
+        this.log = log;
+        this.frames = new Page[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            frames[i] = new Page(Constants.DEFAULT_PAGE_SIZE);
+        }
+    }
+
+    // 블록을 버퍼에 올리고 pin 한다. 파일 끝 너머의 블록은 0으로 채운 새 페이지가 된다
+    // 버퍼에 있는 블록은 풀 전체의 락 없이 페이지의 모니터만 잡고 pin 한다. 교체와 디스크 읽기는 한 스레드씩 한다
+    public Page pin(String fileName, int blockNumber, int pageSize) throws IOException {
+        PageKey key = new PageKey(fileName, blockNumber);
+
+        Page page = pageTable.get(key);
+        if (page != null && tryPin(page, fileName, blockNumber)) {
+            return page;
+        }
+
+        synchronized (this) {
+            page = pageTable.get(key);
+            if (page != null && tryPin(page, fileName, blockNumber)) {
+                return page;
+            }
+
+            page = findVictim();
+            // 이전 내용을 쓴 뒤에 크기를 바꾼다 (먼저 바꾸면 다른 크기의 페이지가 사라진다)
+            page.resize(pageSize);
+
+            try {
+                if (blockNumber < getDiskBlockCount(fileName, pageSize)) {
+                    storage.read(fileName, (long) blockNumber * pageSize, ByteBuffer.wrap(page.data));
+                } else {
+                    Arrays.fill(page.data, (byte) 0);
+                }
+            } catch (IOException | RuntimeException e) {
+                page.pinCount = 0;
+                throw e;
+            }
+
+            // 내용을 다 채운 뒤에 테이블에 넣으므로 다른 스레드는 읽는 중인 페이지를 보지 못한다
+            page.fileName = fileName;
+            page.blockNumber = blockNumber;
+            page.referenced = true;
+            pageTable.put(key, page);
+        }
+        return page;
+    }
+
+    // 페이지가 아직 그 블록을 담고 있으면 pin 한다
+    private static boolean tryPin(Page page, String fileName, int blockNumber) {
+        synchronized (page) {
+            if (page.blockNumber != blockNumber || !fileName.equals(page.fileName)) {
+                return false;
+            }
+            page.pinCount++;
+            page.referenced = true;
+            return true;
+        }
+    }
+
+    public void unpin(Page page, boolean dirty) {
+        synchronized (page) {
+            if (page.pinCount <= 0) {
+                throw new IllegalStateException("pin 되지 않은 페이지입니다: " + page.fileName + " #" + page.blockNumber);
+            }
+
+            page.pinCount--;
+            if (dirty) {
+                page.dirty = true;
+                blockCounts.merge(page.fileName, page.blockNumber + 1, Math::max);
+            }
+        }
+    }
+
+    // 페이지를 고쳤다고 표시하되 pin 은 그대로 둔다. 트랜잭션이 커밋할 때까지 페이지를 붙잡아 둘 때 쓴다
+    public void markDirty(Page page) {
+        synchronized (page) {
+            page.dirty = true;
+            blockCounts.merge(page.fileName, page.blockNumber + 1, Math::max);
+        }
+    }
+
+    public int getBlockCount(String fileName, int pageSize) throws IOException {
+        return Math.max(getDiskBlockCount(fileName, pageSize), blockCounts.getOrDefault(fileName, 0));
+    }
+
+    // 교체와 겹치지 않도록 풀 락을 잡고 쓴다
+    public synchronized void flush(String fileName) throws IOException {
+        List<Page> dirtyPages = new ArrayList<>();
+        for (Page page : frames) {
+            if (page.dirty && fileName.equals(page.fileName)) {
+                dirtyPages.add(page);
+            }
+        }
+        writeBackAll(dirtyPages);
+    }
+
+    public synchronized void flushAll() throws IOException {
+        List<Page> dirtyPages = new ArrayList<>();
+        for (Page page : frames) {
+            if (page.dirty) {
+                dirtyPages.add(page);
+            }
+        }
+        writeBackAll(dirtyPages);
+    }
+
+    // 파일의 페이지 가운데 pin 된 것이 있는지. 있으면 discard 할 수 없다
+    public synchronized boolean isPinned(String fileName) {
+        for (Page page : frames) {
+            synchronized (page) {
+                if (fileName.equals(page.fileName) && page.pinCount > 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // 파일을 새로 만들 때 이전 내용의 프레임을 디스크에 쓰지 않고 버린다
+    public synchronized void discard(String fileName) {
+        for (Page page : frames) {
+            synchronized (page) {
+                if (fileName.equals(page.fileName)) {
+                    if (page.pinCount > 0) {
+                        throw new IllegalStateException("pin 된 페이지는 버릴 수 없습니다: " + fileName + " #" + page.blockNumber);
+                    }
+                    pageTable.remove(new PageKey(page.fileName, page.blockNumber), page);
+                    page.fileName = null;
+                    page.blockNumber = -1;
+                    page.dirty = false;
+                    page.referenced = false;
+                    page.lsn = 0;
+                }
+            }
+        }
+        blockCounts.remove(fileName);
+    }
+
+    // 풀 락을 잡은 채 부른다. 고른 프레임은 이전 내용을 디스크에 쓰고 비운 뒤 pin 수 1 로 예약해 돌려준다
+    private Page findVictim() throws IOException {
+        // 참조 비트를 지우며 최대 두 바퀴 돌면 pin 되지 않은 프레임을 반드시 찾는다
+        for (int i = 0; i < frames.length * 2; i++) {
+            Page page = frames[clockHand];
+            clockHand = (clockHand + 1) % frames.length;
+
+            // 모니터를 잡고 있는 동안 빠른 경로는 이 프레임을 pin 하지 못하고, 비운 뒤에는 이름이 달라 건너뛴다
+            synchronized (page) {
+                if (page.pinCount > 0) {
+                    continue;
+                }
+                if (page.referenced) {
+                    page.referenced = false;
+                    continue;
+                }
+                if (page.fileName != null) {
+                    if (page.dirty) {
+                        writeBack(page);
+                    }
+                    pageTable.remove(new PageKey(page.fileName, page.blockNumber), page);
+                }
+                page.fileName = null;
+                page.blockNumber = -1;
+                page.lsn = 0;
+                page.pinCount = 1;
+                return page;
+            }
+        }
+        throw new IllegalStateException("버퍼 풀에 교체 가능한 프레임이 없습니다.");
+    }
+
+    private void writeBackAll(List<Page> dirtyPages) throws IOException {
+        // 블록 번호 순으로 써서 디스크 접근을 순차적으로 만든다
+        dirtyPages.sort(Comparator.comparing((Page p) -> p.fileName).thenComparingInt(p -> p.blockNumber));
+        for (Page page : dirtyPages) {
+            writeBack(page);
+        }
+    }
+
+    // 쓰기 전에 dirty 를 지우므로, 쓰는 동안 다른 스레드가 고친 페이지는 unpin 에서 다시 dirty 가 된다
+    private void writeBack(Page page) throws IOException {
+        long lsn;
+        synchronized (page) {
+            page.dirty = false;
+            lsn = page.lsn;
+        }
+        try {
+            if (log != null && lsn > 0) {
+                log.flush(lsn);
+            }
+            storage.write(page.fileName, (long) page.blockNumber * page.data.length, ByteBuffer.wrap(page.data));
+        } catch (IOException | RuntimeException e) {
+            synchronized (page) {
+                page.dirty = true;
+            }
+            throw e;
+        }
+    }
+
+    private int getDiskBlockCount(String fileName, int pageSize) throws IOException {
+        return (int) ((storage.size(fileName) + pageSize - 1) / pageSize);
+    }
+}
@@ -0,0 +1,220 @@
+package dbms.storage;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class FileHandleManager implements BlockStorage {
+    public static final int DEFAULT_MAX_OPEN_FILES = 16;
+    public static final int DEFAULT_EXTENT_SIZE = 64 * 1024; // 파일 확장 단위 (바이트)
+
+    private final String directory;
+    private final int maxOpenFiles;
+    private final int extentSize;
+
+    // 접근 순서 LinkedHashMap -> 가장 오래 사용되지 않은 핸들부터 닫는다
+    private final LinkedHashMap<String, FileHandle> handles = new LinkedHashMap<>(16, 0.75f, true);
+
+    private static class FileHandle {
+        private final FileChannel channel;
+        private long logicalSize;   // 실제로 기록된 데이터의 끝
+        private long physicalSize;  // 미리 할당된 영역까지 포함한 파일 크기
+
+        private FileHandle(FileChannel channel, long size) {
+            this.channel = channel;
+            this.logicalSize = size;
+            this.physicalSize = size;
+        }
+    }
+
+    public FileHandleManager(String directory) {
+        this(directory, DEFAULT_MAX_OPEN_FILES, DEFAULT_EXTENT_SIZE);
+    }
+
+    public FileHandleManager(String directory, int maxOpenFiles, int extentSize) {
+        if (maxOpenFiles < 1) {
+            throw new IllegalArgumentException("열 수 있는 파일 수는 1 이상이어야 합니다: " + maxOpenFiles);
+        }
+        this.directory = directory;
+        this.maxOpenFiles = maxOpenFiles;
+        this.extentSize = extentSize;
+    }
+
+    @Override
+    public synchronized void read(String fileName, long position, ByteBuffer dst) throws IOException {
+        FileHandle handle = getHandle(fileName, false);
+
+        if (position + dst.remaining() > handle.logicalSize) {
+            throw new EOFException("파일 끝을 넘어선 읽기: " + fileName + " @" + position);
+        }
+
+        long current = position;
+        while (dst.hasRemaining()) {
+            int n = handle.channel.read(dst, current);
+            if (n < 0) {
+                throw new EOFException("파일 끝을 넘어선 읽기: " + fileName + " @" + current);
+            }
+            current += n;
+        }
+    }
+
+    @Override
+    public synchronized void write(String fileName, long position, ByteBuffer src) throws IOException {
+        FileHandle handle = getHandle(fileName, true);
+        long end = position + src.remaining();
+
+        ensureCapacity(handle, end);
+
+        long current = position;
+        while (src.hasRemaining()) {
+            current += handle.channel.write(src, current);
+        }
+
+        if (end > handle.logicalSize) {
+            handle.logicalSize = end;
+        }
+    }
+
+    @Override
+    public synchronized long size(String fileName) throws IOException {
+        FileHandle handle = handles.get(fileName);
+        if (handle != null) {
+            return handle.logicalSize;
+        }
+
+        File file = new File(directory + fileName);
+        return file.exists() ? file.length() : 0;
+    }
+
+    @Override
+    public synchronized void truncate(String fileName, long size) throws IOException {
+        FileHandle handle = getHandle(fileName, true);
+
+        handle.channel.truncate(size);
+        handle.logicalSize = Math.min(handle.logicalSize, size);
+        handle.physicalSize = handle.channel.size();
+    }
+
+    @Override
+    public synchronized void force(String fileName) throws IOException {
+        // 핸들을 닫으며 내리지 못한 내용이 있을 수 있으므로 닫힌 파일도 다시 열어 내린다
+        FileHandle handle = handles.get(fileName);
+        if (handle == null && new File(directory + fileName).exists()) {
+            handle = getHandle(fileName, false);
+        }
+        if (handle != null) {
+            handle.channel.force(false);
+        }
+    }
+
+    @Override
+    public synchronized void closeFile(String fileName) throws IOException {
+        FileHandle handle = handles.remove(fileName);
+        if (handle != null) {
+            closeHandle(handle);
+        }
+    }
+
+    @Override
+    public synchronized void rename(String source, String target) throws IOException {
+        closeFile(source);
+        closeFile(target);
+        Files.move(new File(directory + source).toPath(), new File(directory + target).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public synchronized void delete(String fileName) throws IOException {
+        closeFile(fileName);
+        Files.deleteIfExists(new File(directory + fileName).toPath());
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        IOException failure = null;
+
+        for (FileHandle handle : handles.values()) {
+            try {
+                closeHandle(handle);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        handles.clear();
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private FileHandle getHandle(String fileName, boolean create) throws IOException {
+        FileHandle handle = handles.get(fileName);
+        if (handle != null) {
+            return handle;
+        }
+
+        File file = new File(directory + fileName);
+        if (!create && !file.exists()) {
+            throw new FileNotFoundException(directory + fileName);
+        }
+
+        evictIfNeeded();
+
+        FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        handle = new FileHandle(channel, channel.size());
+        handles.put(fileName, handle);
+
+        return handle;
+    }
+
+    private void evictIfNeeded() throws IOException {
+        if (handles.size() < maxOpenFiles) {
+            return;
+        }
+
+        List<FileHandle> victims = new ArrayList<>();
+        Iterator<Map.Entry<String, FileHandle>> it = handles.entrySet().iterator();
+        while (handles.size() >= maxOpenFiles && it.hasNext()) {
+            victims.add(it.next().getValue());
+            it.remove();
+        }
+
+        for (FileHandle victim : victims) {
+            closeHandle(victim);
+        }
+    }
+
+    // 미리 할당한 영역을 extent 단위로 늘려 쓰기마다 파일 길이를 바꾸지 않도록 한다
+    private void ensureCapacity(FileHandle handle, long end) throws IOException {
+        if (end <= handle.physicalSize) {
+            return;
+        }
+
+        long newSize = ((end + extentSize - 1) / extentSize) * extentSize;
+        handle.channel.write(ByteBuffer.allocate(1), newSize - 1);
+        handle.physicalSize = newSize;
+    }
+
+    private void closeHandle(FileHandle handle) throws IOException {
+        try {
+            // 닫을 때는 미리 할당한 꼬리 영역을 잘라 실제 크기로 되돌린다
+            if (handle.physicalSize > handle.logicalSize) {
+                handle.channel.truncate(handle.logicalSize);
+            }
+        } finally {
+            handle.channel.close();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package dbms.storage;
+
+import dbms.util.Constants;
+
+import java.nio.ByteBuffer;
+
+// 헤더 블록(0번 블록)의 레이아웃
+// [0..5] 첫 레코드 포인터, [6..9] 매직 넘버, [10..11] 포맷 버전, [12..15] 페이지 크기
+// 데이터 파일은 [16..19] 에 새 레코드를 붙이는 블록 번호(high-water mark)를 둔다. 인덱스 파일은 16 부터 자기 헤더로 쓴다
+public final class FileHeader {
+    public static final int MAGIC = 0x44425346; // "DBSF"
+    public static final int FORMAT_VERSION = 2; // 2: 슬롯 페이지 + (블록, 슬롯) 포인터
+
+    public static final int FIRST_RECORD_OFFSET = 0;
+    public static final int MAGIC_OFFSET = 6;
+    public static final int VERSION_OFFSET = 10;
+    public static final int PAGE_SIZE_OFFSET = 12;
+    public static final int HEADER_SIZE = 16;
+    public static final int APPEND_BLOCK_OFFSET = 16; // 0 이면 기록되지 않은 파일 (이전 버전에서 만든 파일)
+
+    private FileHeader() {
+    }
+
+    public static void init(ByteBuffer header, int pageSize) {
+        for (int i = 0; i < header.capacity(); i++) {
+            header.put(i, (byte) 0);
+        }
+        for (int i = 0; i < Constants.POINTER_SIZE; i++) {
+            header.put(FIRST_RECORD_OFFSET + i, (byte) 0xFF); // 첫 레코드 포인터 -1
+        }
+        header.putInt(MAGIC_OFFSET, MAGIC);
+        header.putShort(VERSION_OFFSET, (short) FORMAT_VERSION);
+        header.putInt(PAGE_SIZE_OFFSET, pageSize);
+    }
+
+    public static int readPageSize(ByteBuffer probe) {
+        return probe.getInt(PAGE_SIZE_OFFSET);
+    }
+
+    // 매직 넘버가 없으면 헤더에 버전이 없던 고정 64바이트 블록 시절의 파일(0)이다
+    public static int readVersion(ByteBuffer probe) {
+        if (probe.limit() < HEADER_SIZE || probe.getInt(MAGIC_OFFSET) != MAGIC) {
+            return 0;
+        }
+        return probe.getShort(VERSION_OFFSET) & 0xFFFF;
+    }
+
+    public static void validatePageSize(int pageSize) {
+        if (pageSize < Constants.MIN_PAGE_SIZE || pageSize > Constants.MAX_PAGE_SIZE
+                || Integer.bitCount(pageSize) != 1) {
+            throw new IllegalArgumentException("페이지 크기는 " + Constants.MIN_PAGE_SIZE + " ~ "
+                    + Constants.MAX_PAGE_SIZE + " 사이의 2의 거듭제곱이어야 합니다: " + pageSize);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package dbms.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// 데이터 블록마다 남은 공간을 1바이트 단계로 기록하는 여유 공간 맵. <파일>.fsm 에 저장한다
+// 단계 하나는 (페이지 크기 / 256) 바이트이며 남은 공간을 내림해서 기록하므로 맵이 말하는 공간은 실제로 있다
+// 디스크에 늦게 반영되거나 중간에 중단되어 실제와 다를 수 있는 힌트이므로, 삽입이 실패하면 그 블록의 값을 고친다
+// 여러 스레드가 함께 쓸 수 있도록 공개 메서드는 동기화되어 있다
+//
+// 파일 형식: [매직 4바이트][페이지 크기 4바이트][블록 수 4바이트][블록마다 단계 1바이트]
+public class FreeSpaceMap {
+    public static final String FILE_SUFFIX = ".fsm";
+
+    private static final int MAGIC = 0x4442464D; // "DBFM"
+    private static final int FILE_HEADER_SIZE = 12;
+    private static final int MAX_LEVEL = 255;
+
+    private final int pageSize;
+    private final int unit;     // 한 단계의 바이트 수
+    private byte[] levels = new byte[64];
+    private int blockCount;
+    private boolean dirty;
+
+    public FreeSpaceMap(int pageSize) {
+        this.pageSize = pageSize;
+        this.unit = Math.max(1, pageSize / (MAX_LEVEL + 1));
+    }
+
+    // 블록의 남은 공간(새 슬롯 하나를 뺀 레코드 최대 크기)을 기록한다
+    public synchronized void update(int blockNumber, int freeBytes) {
+        if (blockNumber >= levels.length) {
+            levels = Arrays.copyOf(levels, Math.max(levels.length * 2, blockNumber + 1));
+        }
+        int level = Math.min(MAX_LEVEL, Math.max(0, freeBytes) / unit);
+        if ((levels[blockNumber] & 0xFF) != level || blockNumber >= blockCount) {
+            levels[blockNumber] = (byte) level;
+            blockCount = Math.max(blockCount, blockNumber + 1);
+            dirty = true;
+        }
+    }
+
+    // length 바이트 레코드가 들어갈 블록을 near 에서 가까운 순서로 window 블록 거리까지 찾는다. 없으면 -1
+    // 0번(헤더) 블록은 고르지 않는다
+    public synchronized int findBlock(int length, int near, int window) {
+        int needed = (length + unit - 1) / unit;
+        if (needed > MAX_LEVEL) {
+            return -1;
+        }
+
+        int maxDistance = (int) Math.min((long) window, blockCount);
+        for (int distance = 0; distance <= maxDistance; distance++) {
+            int after = near + distance;
+            if (after >= 1 && after < blockCount && (levels[after] & 0xFF) >= needed) {
+                return after;
+            }
+            int before = near - distance;
+            if (distance > 0 && before >= 1 && before < blockCount && (levels[before] & 0xFF) >= needed) {
+                return before;
+            }
+        }
+        return -1;
+    }
+
+    public synchronized int getBlockCount() {
+        return blockCount;
+    }
+
+    public synchronized void markDirty() {
+        dirty = true;
+    }
+
+    // 파일이 없거나 형식이나 페이지 크기가 맞지 않으면 null (호출한 쪽에서 페이지를 읽어 다시 만든다)
+    public static FreeSpaceMap load(BlockStorage storage, String dataFileName, int pageSize) throws IOException {
+        String fileName = dataFileName + FILE_SUFFIX;
+        long size = storage.size(fileName);
+        if (size < FILE_HEADER_SIZE) {
+            return null;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        storage.read(fileName, 0, header);
+        int count = header.getInt(8);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != pageSize || count < 0 || FILE_HEADER_SIZE + (long) count > size) {
+            return null;
+        }
+
+        FreeSpaceMap map = new FreeSpaceMap(pageSize);
+        map.levels = new byte[Math.max(64, count)];
+        storage.read(fileName, FILE_HEADER_SIZE, ByteBuffer.wrap(map.levels, 0, count));
+        map.blockCount = count;
+        return map;
+    }
+
+    public synchronized void save(BlockStorage storage, String dataFileName) throws IOException {
+        if (!dirty) {
+            return;
+        }
+        String fileName = dataFileName + FILE_SUFFIX;
+
+        ByteBuffer buffer = ByteBuffer.allocate(FILE_HEADER_SIZE + blockCount);
+        buffer.putInt(MAGIC).putInt(pageSize).putInt(blockCount).put(levels, 0, blockCount).flip();
+
+        storage.truncate(fileName, 0);
+        storage.write(fileName, 0, buffer);
+        storage.force(fileName);
+        dirty = false;
+    }
+}
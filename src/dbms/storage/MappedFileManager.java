@@ -0,0 +1,237 @@
+package dbms.storage;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// 데이터 파일을 고정 크기 청크 단위로 메모리에 매핑하는 저장소 백엔드
+public class MappedFileManager implements BlockStorage {
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024; // 매핑 확장 단위 (바이트)
+
+    private final String directory;
+    private final int chunkSize;
+    private final Map<String, MappedFile> files = new HashMap<>();
+
+    private static class MappedFile {
+        private final FileChannel channel;
+        private final List<MappedByteBuffer> chunks = new ArrayList<>();
+        private long logicalSize;
+
+        private MappedFile(FileChannel channel, long size) {
+            this.channel = channel;
+            this.logicalSize = size;
+        }
+    }
+
+    public MappedFileManager(String directory) {
+        this(directory, DEFAULT_CHUNK_SIZE);
+    }
+
+    public MappedFileManager(String directory, int chunkSize) {
+        if (Integer.bitCount(chunkSize) != 1) {
+            throw new IllegalArgumentException("매핑 청크 크기는 2의 거듭제곱이어야 합니다: " + chunkSize);
+        }
+        this.directory = directory;
+        this.chunkSize = chunkSize;
+    }
+
+    // 쓰기 가능한 뷰. 파일 끝 너머라면 매핑을 청크 단위로 늘린다
+    public synchronized ByteBuffer writableView(String fileName, long position, int length) throws IOException {
+        MappedFile file = getFile(fileName, true);
+
+        int chunkIndex = (int) (position / chunkSize);
+        int offsetInChunk = (int) (position % chunkSize);
+        if (offsetInChunk + length > chunkSize) {
+            return null;
+        }
+
+        ByteBuffer chunk = mapChunk(file, chunkIndex);
+        return chunk.duplicate().position(offsetInChunk).limit(offsetInChunk + length).slice();
+    }
+
+    // writableView 로 직접 수정한 범위를 파일의 논리 크기에 반영한다
+    public synchronized void markWritten(String fileName, long end) throws IOException {
+        MappedFile file = getFile(fileName, true);
+        if (end > file.logicalSize) {
+            file.logicalSize = end;
+        }
+    }
+
+    @Override
+    public synchronized void read(String fileName, long position, ByteBuffer dst) throws IOException {
+        MappedFile file = getFile(fileName, false);
+        if (position + dst.remaining() > file.logicalSize) {
+            throw new EOFException("파일 끝을 넘어선 읽기: " + fileName + " @" + position);
+        }
+
+        long current = position;
+        while (dst.hasRemaining()) {
+            ByteBuffer chunk = mapChunk(file, (int) (current / chunkSize));
+            int offsetInChunk = (int) (current % chunkSize);
+            int n = Math.min(dst.remaining(), chunkSize - offsetInChunk);
+
+            dst.put(chunk.duplicate().position(offsetInChunk).limit(offsetInChunk + n));
+            current += n;
+        }
+    }
+
+    @Override
+    public synchronized void write(String fileName, long position, ByteBuffer src) throws IOException {
+        MappedFile file = getFile(fileName, true);
+        long end = position + src.remaining();
+
+        long current = position;
+        while (src.hasRemaining()) {
+            ByteBuffer chunk = mapChunk(file, (int) (current / chunkSize));
+            int offsetInChunk = (int) (current % chunkSize);
+            int n = Math.min(src.remaining(), chunkSize - offsetInChunk);
+
+            ByteBuffer part = src.duplicate();
+            part.limit(part.position() + n);
+            chunk.duplicate().position(offsetInChunk).put(part);
+
+            src.position(src.position() + n);
+            current += n;
+        }
+
+        if (end > file.logicalSize) {
+            file.logicalSize = end;
+        }
+    }
+
+    @Override
+    public synchronized long size(String fileName) throws IOException {
+        MappedFile file = files.get(fileName);
+        if (file != null) {
+            return file.logicalSize;
+        }
+
+        File f = new File(directory + fileName);
+        return f.exists() ? f.length() : 0;
+    }
+
+    @Override
+    public synchronized void truncate(String fileName, long size) throws IOException {
+        MappedFile file = files.remove(fileName);
+        if (file != null) {
+            // 잘라낼 영역이 매핑된 채로 남지 않도록 먼저 매핑을 버린다
+            file.chunks.clear();
+            file.channel.close();
+        }
+
+        file = getFile(fileName, true);
+        file.channel.truncate(size);
+        file.logicalSize = Math.min(file.logicalSize, size);
+    }
+
+    @Override
+    public synchronized void force(String fileName) throws IOException {
+        MappedFile file = files.get(fileName);
+        if (file != null) {
+            for (MappedByteBuffer chunk : file.chunks) {
+                if (chunk != null) {
+                    chunk.force();
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void closeFile(String fileName) throws IOException {
+        MappedFile file = files.remove(fileName);
+        if (file != null) {
+            closeMappedFile(file);
+        }
+    }
+
+    @Override
+    public synchronized void rename(String source, String target) throws IOException {
+        closeFile(source);
+        closeFile(target);
+        Files.move(new File(directory + source).toPath(), new File(directory + target).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public synchronized void delete(String fileName) throws IOException {
+        closeFile(fileName);
+        Files.deleteIfExists(new File(directory + fileName).toPath());
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        IOException failure = null;
+
+        for (MappedFile file : files.values()) {
+            try {
+                closeMappedFile(file);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        files.clear();
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private MappedFile getFile(String fileName, boolean create) throws IOException {
+        MappedFile file = files.get(fileName);
+        if (file != null) {
+            return file;
+        }
+
+        File f = new File(directory + fileName);
+        if (!create && !f.exists()) {
+            throw new FileNotFoundException(directory + fileName);
+        }
+
+        FileChannel channel = FileChannel.open(f.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        file = new MappedFile(channel, channel.size());
+        files.put(fileName, file);
+
+        return file;
+    }
+
+    private MappedByteBuffer mapChunk(MappedFile file, int chunkIndex) throws IOException {
+        while (file.chunks.size() <= chunkIndex) {
+            file.chunks.add(null);
+        }
+
+        MappedByteBuffer chunk = file.chunks.get(chunkIndex);
+        if (chunk == null) {
+            // READ_WRITE 매핑은 필요하면 파일을 청크 끝까지 늘린다
+            chunk = file.channel.map(FileChannel.MapMode.READ_WRITE, (long) chunkIndex * chunkSize, chunkSize);
+            file.chunks.set(chunkIndex, chunk);
+        }
+        return chunk;
+    }
+
+    private void closeMappedFile(MappedFile file) throws IOException {
+        try {
+            for (MappedByteBuffer chunk : file.chunks) {
+                if (chunk != null) {
+                    chunk.force();
+                }
+            }
+            file.chunks.clear();
+            // 청크 단위로 늘어난 꼬리 영역을 실제 크기로 되돌린다
+            file.channel.truncate(file.logicalSize);
+        } finally {
+            file.channel.close();
+        }
+    }
+}
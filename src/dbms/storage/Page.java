@@ -0,0 +1,60 @@
+package dbms.storage;
+
+import java.nio.ByteBuffer;
+
+// 버퍼 풀의 한 프레임 또는 매핑된 파일 영역. pin 되어 있는 동안만 내용이 유효하다
+public class Page {
+    String fileName;
+    int blockNumber = -1;
+    byte[] data;
+    ByteBuffer buffer;
+    final boolean pooled;
+
+    int pinCount;
+    boolean dirty;
+    boolean referenced; // clock 교체 정책의 참조 비트
+    long lsn;           // 이 내용을 기록한 로그 레코드의 끝. 로그가 여기까지 내려가야 디스크에 쓸 수 있다
+
+    Page(int pageSize) {
+        this.pooled = true;
+        resize(pageSize);
+    }
+
+    // 매핑된 영역을 그대로 감싸는 페이지 (버퍼 풀을 거치지 않음)
+    public Page(String fileName, int blockNumber, ByteBuffer buffer) {
+        this.fileName = fileName;
+        this.blockNumber = blockNumber;
+        this.data = null;
+        this.buffer = buffer;
+        this.pooled = false;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public int getBlockNumber() {
+        return blockNumber;
+    }
+
+    // 절대 위치(get(int), put(int, ...))로만 접근해야 한다
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int getPageSize() {
+        return buffer.capacity();
+    }
+
+    public boolean isPooled() {
+        return pooled;
+    }
+
+    // 파일마다 페이지 크기가 다르므로 프레임을 재사용할 때 크기를 맞춘다
+    void resize(int pageSize) {
+        if (data == null || data.length != pageSize) {
+            data = new byte[pageSize];
+            buffer = ByteBuffer.wrap(data);
+        }
+    }
+}
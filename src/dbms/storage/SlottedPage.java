@@ -0,0 +1,208 @@
+package dbms.storage;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// 데이터 페이지 레이아웃
+// [0..1] 슬롯 수, [2..3] 다음 레코드를 쓸 위치, 이후 레코드들이 앞에서부터 채워진다
+// 슬롯 디렉터리는 페이지 끝에서부터 거꾸로 자라며, 슬롯 하나는 [오프셋 2바이트][길이 2바이트]
+// 삭제된 레코드의 슬롯은 길이 0 으로 남겨 둔다 (툼스톤). 다른 레코드의 슬롯 번호가 바뀌지 않으며, 새 레코드가 다시 쓴다
+// 락 없이 체인을 읽는 검색이 지운 레코드의 다음 포인터를 따라갈 수 있도록, 지운 레코드는 먼저 오프셋의 최상위 비트만
+// 표시해 바이트를 남겨 두고(markDeleted), 그 레코드에 닿을 수 있는 검색이 모두 끝난 뒤 reclaim 으로 툼스톤으로 바꾼다
+// (페이지는 최대 32KB 이므로 오프셋의 최상위 비트는 쓰이지 않는다)
+// 0으로 채워진 페이지는 그대로 빈 페이지로 해석된다
+public final class SlottedPage {
+    public static final int PAGE_HEADER_SIZE = 4;
+    public static final int SLOT_SIZE = 4;
+
+    private static final int SLOT_COUNT_OFFSET = 0;
+    private static final int FREE_START_OFFSET = 2;
+    private static final int DELETED_FLAG = 0x8000;
+
+    private SlottedPage() {
+    }
+
+    public static int getSlotCount(ByteBuffer page) {
+        return page.getShort(SLOT_COUNT_OFFSET) & 0xFFFF;
+    }
+
+    public static int getRecordOffset(ByteBuffer page, int slot) {
+        return page.getShort(slotPosition(page, slot)) & (DELETED_FLAG - 1);
+    }
+
+    public static int getRecordLength(ByteBuffer page, int slot) {
+        return page.getShort(slotPosition(page, slot) + 2) & 0xFFFF;
+    }
+
+    public static boolean isLive(ByteBuffer page, int slot) {
+        return slot >= 0 && slot < getSlotCount(page) && getRecordLength(page, slot) > 0 && !isMarked(page, slot);
+    }
+
+    // markDeleted 로 지웠지만 아직 reclaim 하지 않아 바이트가 남아 있는 슬롯인지
+    public static boolean isDeleted(ByteBuffer page, int slot) {
+        return slot >= 0 && slot < getSlotCount(page) && getRecordLength(page, slot) > 0 && isMarked(page, slot);
+    }
+
+    private static boolean isMarked(ByteBuffer page, int slot) {
+        return (page.getShort(slotPosition(page, slot)) & DELETED_FLAG) != 0;
+    }
+
+    // 한 페이지에 담을 수 있는 가장 큰 레코드
+    public static int getMaxRecordSize(int pageSize) {
+        return pageSize - PAGE_HEADER_SIZE - SLOT_SIZE;
+    }
+
+    // 새 슬롯 하나와 함께 들어갈 수 있는 레코드 최대 크기 (압축 후 기준)
+    public static int getFreeSpace(ByteBuffer page) {
+        return Math.max(0, page.capacity() - getUsedSpace(page) - SLOT_SIZE);
+    }
+
+    // 헤더, 슬롯 디렉터리, 살아있거나 아직 회수하지 않은 레코드가 차지하는 바이트 수
+    private static int getUsedSpace(ByteBuffer page) {
+        int used = PAGE_HEADER_SIZE + getSlotCount(page) * SLOT_SIZE;
+        for (int slot = 0; slot < getSlotCount(page); slot++) {
+            used += getRecordLength(page, slot);
+        }
+        return used;
+    }
+
+    // 레코드를 새 슬롯(또는 삭제된 슬롯)에 넣고 슬롯 번호를 돌려준다. 공간이 없으면 -1
+    public static int insert(ByteBuffer page, byte[] record) {
+        int slotCount = getSlotCount(page);
+
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (getRecordLength(page, slot) == 0) {
+                int offset = allocate(page, record.length, 0);
+                if (offset < 0) {
+                    return -1;
+                }
+                writeSlot(page, slot, offset, record.length);
+                page.put(offset, record);
+                return slot;
+            }
+        }
+
+        if (slotCount * SLOT_SIZE + SLOT_SIZE + PAGE_HEADER_SIZE > page.capacity()) {
+            return -1;
+        }
+
+        int offset = allocate(page, record.length, SLOT_SIZE);
+        if (offset < 0) {
+            return -1;
+        }
+
+        page.putShort(SLOT_COUNT_OFFSET, (short) (slotCount + 1));
+        writeSlot(page, slotCount, offset, record.length);
+        page.put(offset, record);
+
+        return slotCount;
+    }
+
+    // 슬롯의 레코드를 바꾼다. 크기가 같거나 작으면 제자리에서, 크면 페이지 안에서 옮긴다
+    public static boolean update(ByteBuffer page, int slot, byte[] record) {
+        int length = getRecordLength(page, slot);
+
+        if (record.length <= length) {
+            int offset = getRecordOffset(page, slot);
+            page.put(offset, record);
+            writeSlot(page, slot, offset, record.length);
+            return true;
+        }
+
+        // 압축해도 들어가지 않으면 페이지를 건드리지 않는다
+        if (record.length > page.capacity() - getUsedSpace(page) + length) {
+            return false;
+        }
+
+        // 기존 자리를 비운 뒤 다시 할당한다 (필요하면 압축)
+        writeSlot(page, slot, 0, 0);
+        int offset = allocate(page, record.length, 0);
+
+        writeSlot(page, slot, offset, record.length);
+        page.put(offset, record);
+        return true;
+    }
+
+    // 레코드를 지우고 슬롯을 툼스톤으로 남긴다. 공간은 다음 압축 때 회수된다
+    public static void delete(ByteBuffer page, int slot) {
+        writeSlot(page, slot, 0, 0);
+    }
+
+    // 레코드를 지운 것으로 표시만 한다. 바이트는 그대로 남아 압축에도 옮겨질 뿐이고, 슬롯도 다시 쓰이지 않는다
+    public static void markDeleted(ByteBuffer page, int slot) {
+        page.putShort(slotPosition(page, slot), (short) (getRecordOffset(page, slot) | DELETED_FLAG));
+    }
+
+    // 지운 것으로 표시한 슬롯을 모두 툼스톤으로 바꾼다. 하나라도 바꿨으면 true
+    public static boolean reclaim(ByteBuffer page) {
+        boolean reclaimed = false;
+        for (int slot = 0; slot < getSlotCount(page); slot++) {
+            if (isDeleted(page, slot)) {
+                writeSlot(page, slot, 0, 0);
+                reclaimed = true;
+            }
+        }
+        return reclaimed;
+    }
+
+    // 살아있는 레코드를 앞쪽으로 모아 빈 틈을 없앤다. 슬롯 번호(레코드 포인터)는 바뀌지 않는다
+    public static void compact(ByteBuffer page) {
+        int slotCount = getSlotCount(page);
+
+        Integer[] order = new Integer[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(getRecordOffset(page, a), getRecordOffset(page, b)));
+
+        int writePos = PAGE_HEADER_SIZE;
+        for (int slot : order) {
+            int length = getRecordLength(page, slot);
+            if (length == 0) {
+                continue;
+            }
+
+            int offset = getRecordOffset(page, slot);
+            if (offset != writePos) {
+                byte[] moved = new byte[length];
+                page.get(offset, moved);
+                page.put(writePos, moved);
+                writeSlot(page, slot, isMarked(page, slot) ? writePos | DELETED_FLAG : writePos, length);
+            }
+            writePos += length;
+        }
+
+        page.putShort(FREE_START_OFFSET, (short) writePos);
+    }
+
+    private static int allocate(ByteBuffer page, int length, int extraSlotSpace) {
+        int freeStart = getFreeStart(page);
+        int slotAreaStart = page.capacity() - getSlotCount(page) * SLOT_SIZE - extraSlotSpace;
+
+        if (freeStart + length > slotAreaStart) {
+            compact(page);
+            freeStart = getFreeStart(page);
+            if (freeStart + length > slotAreaStart) {
+                return -1;
+            }
+        }
+
+        page.putShort(FREE_START_OFFSET, (short) (freeStart + length));
+        return freeStart;
+    }
+
+    private static int getFreeStart(ByteBuffer page) {
+        int freeStart = page.getShort(FREE_START_OFFSET) & 0xFFFF;
+        return freeStart == 0 ? PAGE_HEADER_SIZE : freeStart;
+    }
+
+    private static int slotPosition(ByteBuffer page, int slot) {
+        return page.capacity() - (slot + 1) * SLOT_SIZE;
+    }
+
+    private static void writeSlot(ByteBuffer page, int slot, int offset, int length) {
+        int position = slotPosition(page, slot);
+        page.putShort(position, (short) offset);
+        page.putShort(position + 2, (short) length);
+    }
+}
@@ -0,0 +1,13 @@
+package dbms.storage;
+
+public enum StorageMode {
+    CHANNEL,    // FileChannel 위치 지정 입출력 + 버퍼 풀
+    MMAP;       // FileChannel.map 으로 파일을 메모리에 매핑, OS 페이지 캐시 사용
+
+    public static StorageMode fromString(String value) {
+        if (value == null || value.isEmpty()) {
+            return CHANNEL;
+        }
+        return valueOf(value.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,263 @@
+package dbms.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+// 데이터 디렉터리의 선행 기록 로그 (redo 전용)
+// 트랜잭션 하나가 고친 페이지의 내용(after-image)을 커밋 레코드 하나로 이어 붙이고, 여러 스레드의 커밋을 fsync 한 번으로 내린다
+// 커밋하지 않은 페이지는 버퍼 풀에 pin 된 채 디스크에 쓰이지 않으므로(no-steal) 되돌리기 기록은 없다
+// 레코드 형식: [길이 4][CRC32 4][종류 1][내용]
+//   COMMIT: [페이지 수 4] 페이지마다 [파일명(UTF)][블록 번호 4][페이지 크기 4][내용]
+//   RESET : [파일명(UTF)] 이 파일의 앞선 페이지 기록은 버린다 (파일을 새로 만들거나 지우거나 바꿔 넣기 전)
+public class WriteAheadLog implements AutoCloseable {
+    public static final String FILE_NAME = "wal.log";
+
+    private static final byte COMMIT = 1;
+    private static final byte RESET = 2;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private final FileChannel channel;
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final Set<String> loggedFiles = new HashSet<>(); // 마지막 체크포인트 뒤로 페이지를 기록한 파일
+    private long fileSize;      // 디스크에 쓴 로그의 끝
+    private long appendedLsn;   // 마지막으로 덧붙인 레코드의 끝 (체크포인트와 관계없이 계속 늘어난다)
+    private long durableLsn;    // 디스크에 내려간 로그의 끝
+    private boolean flushing;   // 한 스레드가 모인 레코드를 쓰고 fsync 하는 중
+
+    // recover 를 먼저 불러 남은 로그를 처리한 뒤에 연다
+    public WriteAheadLog(String directory) throws IOException {
+        this.channel = FileChannel.open(new File(directory + FILE_NAME).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.fileSize = channel.size();
+    }
+
+    // 페이지들의 현재 내용을 커밋 레코드로 덧붙이고 그 LSN 을 돌려준다. 디스크에 내리려면 flush(lsn) 를 부른다
+    // 페이지는 호출한 쪽이 pin 하고 있어야 하며, 버퍼 풀은 LSN 까지 로그가 내려간 뒤에만 페이지를 디스크에 쓴다
+    public long commit(List<Page> pages) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(COMMIT);
+        out.writeInt(pages.size());
+        for (Page page : pages) {
+            out.writeUTF(page.fileName);
+            out.writeInt(page.blockNumber);
+            out.writeInt(page.data.length);
+            out.write(page.data);
+        }
+
+        long lsn;
+        synchronized (this) {
+            lsn = append(bytes.toByteArray());
+            for (Page page : pages) {
+                loggedFiles.add(page.fileName);
+            }
+        }
+        for (Page page : pages) {
+            synchronized (page) {
+                page.lsn = lsn;
+            }
+        }
+        return lsn;
+    }
+
+    // 파일 내용을 로그 밖에서 버리기 전에 부른다. 복구할 때 이 파일의 앞선 페이지 기록을 새 내용에 덮어쓰지 않게 한다
+    // 체크포인트 뒤로 기록한 페이지가 없는 파일이면 아무것도 하지 않는다
+    public void reset(String fileName) throws IOException {
+        long lsn;
+        synchronized (this) {
+            if (!loggedFiles.remove(fileName)) {
+                return;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(RESET);
+            out.writeUTF(fileName);
+            lsn = append(bytes.toByteArray());
+        }
+        flush(lsn);
+    }
+
+    private long append(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        header.putInt(body.length).putInt((int) crc.getValue());
+
+        pending.write(header.array(), 0, RECORD_HEADER_SIZE);
+        pending.write(body, 0, body.length);
+        appendedLsn += RECORD_HEADER_SIZE + body.length;
+        return appendedLsn;
+    }
+
+    // lsn 까지의 로그가 디스크에 내려갈 때까지 기다린다 (group commit)
+    // 다른 스레드가 fsync 하는 동안 덧붙은 커밋은 모였다가, 그 fsync 가 끝나면 기다리던 스레드 하나가 한 번에 내린다
+    public void flush(long lsn) throws IOException {
+        byte[] batch;
+        long target;
+        synchronized (this) {
+            while (flushing && durableLsn < lsn) {
+                waitForFlush();
+            }
+            if (durableLsn >= lsn) {
+                return;
+            }
+            flushing = true;
+            batch = pending.toByteArray();
+            pending.reset();
+            target = appendedLsn;
+        }
+
+        boolean written = false;
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(batch);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, fileSize + buffer.position());
+            }
+            channel.force(false);
+            written = true;
+        } finally {
+            synchronized (this) {
+                if (written) {
+                    fileSize += batch.length;
+                    durableLsn = target;
+                } else {
+                    // 쓰지 못한 레코드는 다음 fsync 때 다시 쓴다
+                    byte[] later = pending.toByteArray();
+                    pending.reset();
+                    pending.write(batch, 0, batch.length);
+                    pending.write(later, 0, later.length);
+                }
+                flushing = false;
+                notifyAll();
+            }
+        }
+    }
+
+    // 아직 디스크에 내리지 않은 레코드까지 포함한 로그 크기
+    public synchronized long size() {
+        return fileSize + pending.size();
+    }
+
+    // 체크포인트의 마지막 단계. 커밋한 페이지가 모두 데이터 파일에 내려간 뒤에 불러 로그를 비운다
+    // 진행 중인 트랜잭션이 없어야 한다
+    public synchronized void truncate() throws IOException {
+        while (flushing) {
+            waitForFlush();
+        }
+        channel.truncate(0);
+        channel.force(true);
+        fileSize = 0;
+        pending.reset();
+        durableLsn = appendedLsn;
+        loggedFiles.clear();
+        notifyAll();
+    }
+
+    private void waitForFlush() throws InterruptedIOException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("로그 쓰기를 기다리다 중단되었습니다.");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // 남은 로그의 커밋된 페이지를 데이터 파일에 다시 쓰고 로그를 비운다. 다시 쓴 파일 이름을 돌려준다
+    // 끝이 잘렸거나 CRC 가 맞지 않는 레코드부터는 커밋되지 않은 것으로 보고 버린다
+    public static Set<String> recover(String directory, BlockStorage storage) throws IOException {
+        File file = new File(directory + FILE_NAME);
+        Set<String> recoveredFiles = new LinkedHashSet<>();
+        if (!file.exists() || file.length() == 0) {
+            return recoveredFiles;
+        }
+
+        ByteBuffer log;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            log = ByteBuffer.allocate((int) channel.size());
+            while (log.hasRemaining() && channel.read(log, log.position()) >= 0) {
+                // 끝까지 읽는다
+            }
+            log.flip();
+        }
+
+        List<byte[]> records = new ArrayList<>();
+        while (log.remaining() >= RECORD_HEADER_SIZE) {
+            int length = log.getInt();
+            int checksum = log.getInt();
+            if (length <= 0 || length > log.remaining()) {
+                break;
+            }
+            byte[] body = new byte[length];
+            log.get(body);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            records.add(body);
+        }
+
+        // 파일마다 마지막 RESET 보다 뒤에 있는 커밋만 다시 쓴다
+        Map<String, Integer> lastReset = new HashMap<>();
+        for (int i = 0; i < records.size(); i++) {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(records.get(i)));
+            if (in.readByte() == RESET) {
+                lastReset.put(in.readUTF(), i);
+            }
+        }
+
+        int commits = 0;
+        for (int i = 0; i < records.size(); i++) {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(records.get(i)));
+            if (in.readByte() != COMMIT) {
+                continue;
+            }
+            int pageCount = in.readInt();
+            for (int p = 0; p < pageCount; p++) {
+                String fileName = in.readUTF();
+                int blockNumber = in.readInt();
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                if (i > lastReset.getOrDefault(fileName, -1)) {
+                    storage.write(fileName, (long) blockNumber * data.length, ByteBuffer.wrap(data));
+                    recoveredFiles.add(fileName);
+                }
+            }
+            commits++;
+        }
+
+        for (String fileName : recoveredFiles) {
+            storage.force(fileName);
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(0);
+            channel.force(true);
+        }
+
+        if (commits > 0) {
+            System.out.println("로그에서 " + commits + "개의 커밋을 복구했습니다.");
+        }
+        return recoveredFiles;
+    }
+}
@@ -1,58 +1,88 @@
 package dbms.util;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 public class ByteUtils {
+    // 문자열은 항상 UTF-8 로 저장한다. UTF-8 바이트의 부호 없는 비교 순서는 코드 포인트 순서와 같다
+    public static final Charset CHARSET = StandardCharsets.UTF_8;
 
-    public static byte[] pointerToBytes(int blockNumber, short offsetInBlock) {
+    // 포인터는 [블록 번호 4바이트][슬롯 번호 2바이트]. null 포인터는 모두 0xFF
+    public static byte[] pointerToBytes(RecordPointer pointer) {
         byte[] result = new byte[Constants.POINTER_SIZE]; // 6바이트
-        result[0] = (byte) ((blockNumber >> 24) & 0xFF);
-        result[1] = (byte) ((blockNumber >> 16) & 0xFF);
-        result[2] = (byte) ((blockNumber >> 8) & 0xFF);
-        result[3] = (byte) (blockNumber & 0xFF);
-
-        result[4] = (byte) ((offsetInBlock >> 8) & 0xFF);
-        result[5] = (byte) (offsetInBlock & 0xFF);
-
+        writePointer(ByteBuffer.wrap(result), 0, pointer);
         return result;
     }
 
-    public static int getBlockNumberFromPointer(byte[] pointerBytes) {
-        if (pointerBytes == null || pointerBytes.length < 4) {
-            return -1;
+    public static void writePointer(ByteBuffer buffer, int offset, RecordPointer pointer) {
+        if (pointer == null) {
+            buffer.putInt(offset, -1);
+            buffer.putShort(offset + 4, (short) -1);
+            return;
         }
 
-        return ((pointerBytes[0] & 0xFF) << 24) |
-                ((pointerBytes[1] & 0xFF) << 16) |
-                ((pointerBytes[2] & 0xFF) << 8) |
-                (pointerBytes[3] & 0xFF);
+        buffer.putInt(offset, pointer.getBlockNumber());
+        buffer.putShort(offset + 4, (short) pointer.getSlotNumber());
     }
 
-    public static short getOffsetFromPointer(byte[] pointerBytes) {
-        if (pointerBytes == null || pointerBytes.length < 6) {
-            return -1;
+    public static RecordPointer readPointer(ByteBuffer buffer, int offset) {
+        int blockNumber = buffer.getInt(offset);
+        if (blockNumber < 0) {
+            return null;
         }
 
-        return (short) (((pointerBytes[4] & 0xFF) << 8) |
-                (pointerBytes[5] & 0xFF));
+        int slotNumber = buffer.getShort(offset + 4) & 0xFFFF;
+        return new RecordPointer(blockNumber, slotNumber);
     }
 
-    public static byte[] fileOffsetToPointerBytes(int fileOffset) {
-        int blockNumber = fileOffset / Constants.BLOCK_SIZE;
-        short offsetInBlock = (short) (fileOffset % Constants.BLOCK_SIZE);
-
-        return pointerToBytes(blockNumber, offsetInBlock);
+    // CHAR 검색 키를 필드에 저장될 때와 같이 length 바이트로 자른 UTF-8 바이트 (0 패딩 없음)
+    public static byte[] encodeKey(String key, int length) {
+        if (key == null) {
+            return null;
+        }
+        return trimKey(stringToBytes(key, length), 0, length);
     }
 
-    public static int pointerBytesToFileOffset(byte[] pointerBytes) {
-        int blockNumber = getBlockNumberFromPointer(pointerBytes);
-        int offsetInBlock = getOffsetFromPointer(pointerBytes);
+    // 고정 길이 필드(buffer 의 position 부터 length 바이트)와 인코딩된 key 를 부호 없는 바이트 순서로 비교한다
+    // 짧은 쪽은 뒤에 0이 이어진 것으로 보므로 0으로 채운 CHAR 필드와 0 패딩을 뺀 키를 그대로 비교할 수 있다
+    public static int compareKey(ByteBuffer buffer, int position, int length, byte[] key) {
+        int common = Math.min(length, key.length);
+        int c;
+        if (buffer.hasArray()) {
+            int start = buffer.arrayOffset() + position;
+            c = Arrays.compareUnsigned(buffer.array(), start, start + common, key, 0, common);
+        } else {
+            c = 0;
+            for (int i = 0; i < common && c == 0; i++) {
+                c = Integer.compare(buffer.get(position + i) & 0xFF, key[i] & 0xFF);
+            }
+        }
+        if (c != 0) {
+            return c;
+        }
 
-        if (blockNumber < 0 || offsetInBlock < 0) {
-            return -1;
+        for (int i = common; i < length; i++) {
+            if (buffer.get(position + i) != 0) {
+                return 1;
+            }
         }
+        for (int i = common; i < key.length; i++) {
+            if (key[i] != 0) {
+                return -1;
+            }
+        }
+        return 0;
+    }
 
-        return blockNumber * Constants.BLOCK_SIZE + offsetInBlock;
+    // 0 패딩을 뺀 고정 길이 필드의 실제 바이트
+    public static byte[] trimKey(byte[] field, int offset, int length) {
+        int validLength = 0;
+        while (validLength < length && field[offset + validLength] != 0) {
+            validLength++;
+        }
+        return Arrays.copyOfRange(field, offset, offset + validLength);
     }
 
     public static byte[] stringToBytes(String str, int length) {
@@ -62,9 +92,15 @@ public class ByteUtils {
             return result;
         }
 
-        byte[] strBytes = str.getBytes();
+        byte[] strBytes = str.getBytes(CHARSET);
 
+        // 필드 길이에서 자를 때 멀티바이트 문자가 중간에 잘리지 않도록 문자 경계까지 물린다
         int copyLength = Math.min(strBytes.length, length);
+        if (copyLength < strBytes.length) {
+            while (copyLength > 0 && (strBytes[copyLength] & 0xC0) == 0x80) {
+                copyLength--;
+            }
+        }
 
         System.arraycopy(strBytes, 0, result, 0, copyLength);
 
@@ -83,7 +119,25 @@ public class ByteUtils {
             }
         }
 
-        return new String(bytes, offset, validLength);
+        return new String(bytes, offset, validLength, CHARSET);
+    }
+
+    public static String bytesToString(ByteBuffer buffer, int offset, int length) {
+        if (buffer.hasArray()) {
+            return bytesToString(buffer.array(), buffer.arrayOffset() + offset, length);
+        }
+
+        int validLength = length;
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(offset + i) == 0) {
+                validLength = i;
+                break;
+            }
+        }
+
+        byte[] strBytes = new byte[validLength];
+        buffer.get(offset, strBytes);
+        return new String(strBytes, CHARSET);
     }
 
     public static byte createNullBitmap(boolean[] isNull) {
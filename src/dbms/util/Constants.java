@@ -1,16 +1,20 @@
 package dbms.util;
 
 public class Constants {
-    public static final int BLOCK_SIZE = 64;
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+    public static final int MIN_PAGE_SIZE = 64;
+    public static final int MAX_PAGE_SIZE = 32768; // 블록 내 오프셋이 2바이트이므로
+    public static final int BUFFER_POOL_SIZE = 256; // 버퍼 풀 프레임 수
+    public static final long BULK_LOAD_MEMORY = 64L * 1024 * 1024; // 일괄 적재 정렬에 쓰는 메모리 (바이트)
+    public static final long CHECKPOINT_LOG_SIZE = 16L * 1024 * 1024; // 선행 기록 로그가 이만큼 커지면 체크포인트 (바이트)
 
     public static final int POINTER_SIZE = 6; // byte
     public static final int NULL_BITMAP_SIZE = 1; // byte
+    public static final int LENGTH_PREFIX_SIZE = 2; // 가변 길이 필드 앞의 길이 (byte)
 
     public static final String DATA_DIRECTORY = "src/data/";
     public static final String RESOURCE_DIRECTORY = "src/dbms/resources/";
 
-    public static final String CHAR_TYPE = "CHAR";
-
     public static final String DELIMITER = ";";
     public static final String NULL_VALUE = "null";
 }
\ No newline at end of file
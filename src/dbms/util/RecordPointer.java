@@ -2,27 +2,36 @@ package dbms.util;
 
 public class RecordPointer {
     private final int blockNumber;
-    private final int offsetInBlock;
+    private final int slotNumber;
 
-    public RecordPointer(int blockNumber, int offsetInBlock) {
+    public RecordPointer(int blockNumber, int slotNumber) {
         this.blockNumber = blockNumber;
-        this.offsetInBlock = offsetInBlock;
-    }
-
-    public int toFileOffset(int blockSize) {
-        return blockNumber * blockSize + offsetInBlock;
+        this.slotNumber = slotNumber;
     }
 
     public int getBlockNumber() {
         return blockNumber;
     }
 
-    public int getOffsetInBlock() {
-        return offsetInBlock;
+    public int getSlotNumber() {
+        return slotNumber;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RecordPointer)) return false;
+        RecordPointer other = (RecordPointer) o;
+        return blockNumber == other.blockNumber && slotNumber == other.slotNumber;
+    }
+
+    @Override
+    public int hashCode() {
+        return blockNumber * 31 + slotNumber;
     }
 
     @Override
     public String toString() {
-        return "Block #" + blockNumber + ", Offset: " + offsetInBlock;
+        return "Block #" + blockNumber + ", Slot: " + slotNumber;
     }
 }